@@ -0,0 +1,63 @@
+package bundle.config;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lectura de la configuración remota: del texto JSON al {@link InstallerConfig}, con modpacks
+ * de una URL y con listas de artefactos.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfigParseBenchmark {
+
+    @Param({"10", "200"})
+    public int modpacks;
+
+    // 0 = cada modpack es una URL suelta
+    @Param({"0", "50"})
+    public int artifactsPerPack;
+
+    private final Gson gson = new Gson();
+    private String json;
+
+    @Setup(Level.Trial)
+    public void createConfig() {
+        JsonObject packs = new JsonObject();
+        for (int p = 0; p < modpacks; p++) {
+            String base = "https://example.com/packs/" + p;
+            if (artifactsPerPack == 0) {
+                packs.addProperty("Pack " + p, base + "/pack.zip");
+                continue;
+            }
+            JsonArray artifacts = new JsonArray();
+            for (int a = 0; a < artifactsPerPack; a++) {
+                JsonObject artifact = new JsonObject();
+                artifact.addProperty("url", base + "/mod" + a + ".jar");
+                artifact.addProperty("sha256", String.format("%064x", (long) p * 1000 + a));
+                artifact.addProperty("size", 1024L * (a + 1));
+                artifact.addProperty("path", "mods/mod" + a + ".jar");
+                artifacts.add(artifact);
+            }
+            JsonObject pack = new JsonObject();
+            pack.add("artifacts", artifacts);
+            packs.add("Pack " + p, pack);
+        }
+        JsonObject root = new JsonObject();
+        root.add("modpacks", packs);
+        json = gson.toJson(root);
+    }
+
+    @Benchmark
+    public InstallerConfig parse() throws ConfigParseException {
+        return ConfigParser.parse(gson.fromJson(json, JsonObject.class));
+    }
+}
@@ -0,0 +1,76 @@
+package bundle.download;
+
+import bundle.net.HttpTransport;
+import bundle.testing.FakeCdnServer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpResponse;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bucle de copia de {@link DownloadManager} contra un servidor HTTP local, con distintos
+ * tamaños de buffer y con o sin SHA-256 en el mismo bucle.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransferBenchmark {
+
+    @Param({"16384", "65536", "262144", "1048576"})
+    public int bufferSize;
+
+    @Param({"false", "true"})
+    public boolean sha256;
+
+    @Param({"33554432"})
+    public int payloadBytes;
+
+    private FakeCdnServer server;
+    private HttpTransport transport;
+    private URI uri;
+    private Path target;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        server = FakeCdnServer.start();
+        server.publish("/pack.zip", FakeCdnServer.randomBytes(payloadBytes, 1));
+
+        transport = new HttpTransport(java.time.Duration.ofSeconds(5), java.time.Duration.ofSeconds(30));
+        uri = server.uri("/pack.zip");
+        target = Files.createTempFile("jmh-transfer", ".part");
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws IOException {
+        server.close();
+        Files.deleteIfExists(target);
+    }
+
+    @Benchmark
+    public long transfer() throws Exception {
+        HttpResponse<InputStream> response = transport.send(transport.get(uri).build(),
+                HttpResponse.BodyHandlers.ofInputStream());
+        MessageDigest digest = sha256 ? DownloadCache.newSha256() : null;
+        InputStream body = response.body();
+        HttpTransport.IdleGuard guard = transport.guard(body);
+        try (guard;
+             ReadableByteChannel input = Channels.newChannel(body);
+             FileChannel output = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            DownloadManager.transferOriginalMethod(input, output, null, guard, digest, bufferSize);
+            return output.size();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package bundle.installer;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Borrado recursivo de un árbol grande, como las carpetas de caché que se limpian en cada instalación.
+ * El árbol se recrea antes de cada invocación, así que solo se mide el borrado. {@code discard} mide
+ * lo que espera la instalación con la papelera; el borrado de fondo se espera fuera de la medida.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class DeleteBenchmark {
+
+    // directorios x archivos por directorio
+    @Param({"50x200", "500x20"})
+    public String tree;
+
+    private Path gameDir;
+    private Path root;
+
+    @Setup(Level.Invocation)
+    public void createTree() throws IOException {
+        String[] shape = tree.split("x");
+        int directories = Integer.parseInt(shape[0]);
+        int files = Integer.parseInt(shape[1]);
+        byte[] content = new byte[1024];
+
+        gameDir = Files.createTempDirectory("jmh-delete");
+        root = gameDir.resolve("cache");
+        for (int d = 0; d < directories; d++) {
+            Path dir = Files.createDirectories(root.resolve("level" + (d % 5)).resolve("dir" + d));
+            for (int f = 0; f < files; f++) {
+                Files.write(dir.resolve("file" + f + ".dat"), content);
+            }
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void cleanup() throws IOException {
+        Trash.await(1, TimeUnit.MINUTES);
+        BundleInstaller.deleteDirectoryRecursive(gameDir);
+    }
+
+    @Benchmark
+    public void delete() throws IOException {
+        BundleInstaller.deleteDirectoryRecursive(root);
+    }
+
+    @Benchmark
+    public void discard() throws IOException {
+        Trash.discard(gameDir, root);
+    }
+}
@@ -0,0 +1,92 @@
+package bundle.installer;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Extracción de packs sintéticos (muchos archivos pequeños o pocos grandes) con distintos
+ * umbrales para pasar a {@code transferFrom} y distintos buffers para la copia con arrays.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExtractBenchmark {
+
+    // entradas x bytes por entrada
+    @Param({"2000x8192", "8x8388608"})
+    public String pack;
+
+    // 0 = siempre transferFrom; MAX = siempre buffer
+    @Param({"0", "1048576", "9223372036854775807"})
+    public long channelThreshold;
+
+    @Param({"65536", "262144"})
+    public int bufferSize;
+
+    private Path zip;
+    private Path target;
+
+    @Setup(Level.Trial)
+    public void createPack() throws IOException {
+        String[] shape = pack.split("x");
+        int entries = Integer.parseInt(shape[0]);
+        int entrySize = Integer.parseInt(shape[1]);
+
+        // Mitad aleatorio, mitad repetido: se comprime algo, como un modpack real
+        byte[] content = new byte[entrySize];
+        new Random(1).nextBytes(content);
+        for (int i = entrySize / 2; i < entrySize; i++) {
+            content[i] = (byte) (i % 31);
+        }
+
+        zip = Files.createTempFile("jmh-pack", ".zip");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+            for (int i = 0; i < entries; i++) {
+                out.putNextEntry(new ZipEntry("mods/dir" + (i % 20) + "/file" + i + ".jar"));
+                out.write(content);
+                out.closeEntry();
+            }
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void createTarget() throws IOException {
+        target = Files.createTempDirectory("jmh-extract");
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteTarget() throws IOException {
+        BundleInstaller.deleteDirectoryRecursive(target);
+    }
+
+    @TearDown(Level.Trial)
+    public void deletePack() throws IOException {
+        Files.deleteIfExists(zip);
+    }
+
+    @Benchmark
+    public int extract() throws IOException {
+        int count = 0;
+        try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                BundleInstaller.extractEntry(zipFile, entries.nextElement(), target, channelThreshold, bufferSize);
+                count++;
+            }
+        }
+        return count;
+    }
+}
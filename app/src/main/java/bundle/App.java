@@ -1,20 +1,50 @@
 package bundle;
+import bundle.cli.CliInstaller;
 import bundle.installer.BundleInstaller;
+import bundle.util.StartupTimer;
 
 import javax.swing.*;
+import java.util.concurrent.CompletableFuture;
 
 public class App {
 
     public static void main(String[] args) {
-        try {
-            UIManager.setLookAndFeel(new com.formdev.flatlaf.FlatDarkLaf());
-            JFrame.setDefaultLookAndFeelDecorated(true);
-        } catch (Exception e) {
-            e.printStackTrace();
+        // Con argumentos no se abre ventana: ni Swing ni AWT llegan a cargarse
+        if (CliInstaller.wants(args)) {
+            System.exit(CliInstaller.run(args));
         }
 
-        BundleInstaller INSTALLER = new BundleInstaller();
-        INSTALLER.openUI();
+        Window.launch();
     }
-}
 
+    // En una clase aparte: verificar App no debe cargar clases de Swing en el modo consola
+    private static final class Window {
+        static void launch() {
+            StartupTimer timer = StartupTimer.start();
+
+            // El look and feel se instala en el hilo de Swing mientras se preparan propiedades y configuración
+            CompletableFuture<Void> lookAndFeel = CompletableFuture.runAsync(() -> {
+                try {
+                    UIManager.setLookAndFeel(new com.formdev.flatlaf.FlatDarkLaf());
+                    JFrame.setDefaultLookAndFeelDecorated(true);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+                timer.mark("look and feel");
+            }, SwingUtilities::invokeLater);
+
+            BundleInstaller INSTALLER = new BundleInstaller();
+            timer.mark("propiedades");
+
+            // La ventana se abre sin esperar a la red; la lista de modpacks se rellena al llegar
+            CompletableFuture<?> config = INSTALLER.loadConfig()
+                    .whenComplete((cfg, e) -> timer.mark("configuración"));
+            CompletableFuture<?> window = lookAndFeel
+                    .thenCompose(ignored -> INSTALLER.openUI())
+                    .whenComplete((v, e) -> timer.mark("ventana visible"));
+
+            CompletableFuture.allOf(config, window).whenComplete((v, e) ->
+                    timer.report(INSTALLER.installerProperties.getProperty("window_title", "")));
+        }
+    }
+}
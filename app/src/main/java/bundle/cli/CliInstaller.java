@@ -0,0 +1,450 @@
+package bundle.cli;
+
+import bundle.config.InstallerConfig;
+import bundle.download.DownloadException;
+import bundle.download.DownloadProgress;
+import bundle.installer.BundleInstaller;
+import bundle.installer.InstallJob;
+import bundle.util.OperatingSystem;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Instalación sin interfaz para scripts y despliegues en muchas máquinas. No carga ninguna
+ * clase de Swing ni AWT. Los registros de siempre van a stderr y stdout queda solo para
+ * eventos JSON, uno por línea.
+ */
+public final class CliInstaller {
+
+    public static final int EXIT_OK = 0;
+    public static final int EXIT_FAILED = 1;
+    public static final int EXIT_USAGE = 2;
+
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Uso: java -jar instalador.jar --pack <nombre> [opciones]",
+            "     java -jar instalador.jar --job <nombre>=<ruta> [--job ...] [opciones]",
+            "  --pack <nombre>          modpack a instalar",
+            "  --game-dir <ruta>        directorio de Minecraft (por defecto el del sistema)",
+            "  --job <nombre>=<ruta>    instala el modpack en esa ruta; se puede repetir",
+            "  --jobs <archivo>         lista de trabajos, una línea <nombre>=<ruta> por trabajo",
+            "  --list                   solo muestra los modpacks disponibles",
+            "  --concurrency <n>        archivos descargándose a la vez",
+            "  --per-host <n>           descargas simultáneas por servidor",
+            "  --segments <n>           conexiones por archivo",
+            "  --retries <n>            reintentos por archivo ante fallos de red pasajeros (4)",
+            "  --limit-rate <KB/s>      ancho de banda máximo entre todas las descargas (0 sin límite)",
+            "  --disk-writers <n>       archivos escritos a la vez al extraer (0 sin límite)",
+            "  --cache-dir <ruta>       caché de descargas (compartible entre instalaciones)",
+            "  --offline                sin red: configuración y archivos solo desde caché",
+            "  --offline-cache <ruta>   equivale a --cache-dir <ruta> --offline",
+            "  --streaming              extraer mientras se descarga",
+            "  --dedup                  enlazar los .jar iguales entre instancias en vez de copiarlos",
+            "  --in-place               escribir directamente sobre la instalación, sin etapa ni respaldo",
+            "  --rollback               volver a la instalación anterior a la última (con --game-dir)",
+            "  --progress-ms <n>        intervalo de los eventos de progreso (500)",
+            "  --help                   esta ayuda");
+
+    private final PrintStream events;
+    private final long start = System.nanoTime();
+
+    private CliInstaller(PrintStream events) {
+        this.events = events;
+    }
+
+    /**
+     * Con cualquier argumento se usa la consola en lugar de la ventana.
+     */
+    public static boolean wants(String[] args) {
+        return args.length > 0;
+    }
+
+    /**
+     * Ejecuta la instalación y devuelve el código de salida.
+     */
+    public static int run(String[] args) {
+        PrintStream events = new PrintStream(new FileOutputStream(FileDescriptor.out), true, StandardCharsets.UTF_8);
+        // Todo lo que el instalador imprime pasa a stderr para no mezclarlo con los eventos
+        System.setOut(System.err);
+        try {
+            return new CliInstaller(events).execute(args);
+        } finally {
+            BundleInstaller.shutdown();
+        }
+    }
+
+    private int execute(String[] args) {
+        Properties overrides = new Properties();
+        String pack = null;
+        Path gameDir = null;
+        List<InstallJob> jobs = new ArrayList<>();
+        boolean list = false;
+        boolean rollback = false;
+        boolean offline = false;
+        long progressMillis = 500;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "--pack":
+                        pack = value(args, ++i, arg);
+                        break;
+                    case "--game-dir":
+                        gameDir = Paths.get(value(args, ++i, arg));
+                        break;
+                    case "--job":
+                        jobs.add(job(value(args, ++i, arg)));
+                        break;
+                    case "--jobs":
+                        jobs.addAll(readJobs(Paths.get(value(args, ++i, arg))));
+                        break;
+                    case "--list":
+                        list = true;
+                        break;
+                    case "--concurrency":
+                        overrides.setProperty("download_concurrency", count(args, ++i, arg, 1));
+                        break;
+                    case "--per-host":
+                        overrides.setProperty("download_per_host", count(args, ++i, arg, 1));
+                        break;
+                    case "--segments":
+                        overrides.setProperty("download_segments", count(args, ++i, arg, 1));
+                        break;
+                    case "--retries":
+                        // Los intentos son los reintentos más el primero
+                        int retries = Integer.parseInt(count(args, ++i, arg, 0));
+                        overrides.setProperty("download_max_attempts",
+                                Integer.toString(Math.min(retries, Integer.MAX_VALUE - 1) + 1));
+                        break;
+                    case "--limit-rate":
+                        overrides.setProperty("bandwidth_limit_kbps", number(args, ++i, arg));
+                        break;
+                    case "--disk-writers":
+                        overrides.setProperty("disk_writers", count(args, ++i, arg, 0));
+                        break;
+                    case "--cache-dir":
+                        overrides.setProperty("cache_dir", value(args, ++i, arg));
+                        overrides.setProperty("cache_enabled", "true");
+                        break;
+                    case "--offline-cache":
+                        overrides.setProperty("cache_dir", value(args, ++i, arg));
+                        overrides.setProperty("cache_enabled", "true");
+                        offline = true;
+                        break;
+                    case "--offline":
+                        offline = true;
+                        break;
+                    case "--streaming":
+                        overrides.setProperty("install_streaming", "true");
+                        break;
+                    case "--in-place":
+                        overrides.setProperty("install_staged", "false");
+                        break;
+                    case "--rollback":
+                        rollback = true;
+                        break;
+                    case "--dedup":
+                        overrides.setProperty("dedup_enabled", "true");
+                        break;
+                    case "--progress-ms":
+                        progressMillis = Math.max(50, Long.parseLong(number(args, ++i, arg)));
+                        break;
+                    case "--help":
+                        System.err.println(USAGE);
+                        return EXIT_OK;
+                    default:
+                        throw new IllegalArgumentException("Argumento desconocido: " + arg);
+                }
+            }
+            if (pack != null && !jobs.isEmpty()) {
+                throw new IllegalArgumentException("--pack no se puede combinar con --job");
+            }
+            if (pack == null && jobs.isEmpty() && !list && !rollback) {
+                throw new IllegalArgumentException("Falta --pack o --job");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            emit(event("error").with("message", e.getMessage()));
+            return EXIT_USAGE;
+        }
+        if (offline) {
+            overrides.setProperty("offline", "true");
+        }
+
+        if (rollback) {
+            return executeRollback(gameDir != null ? gameDir : OperatingSystem.getCurrent().getMCDir());
+        }
+
+        BundleInstaller installer = new BundleInstaller(overrides);
+        if (gameDir != null) {
+            installer.gameDir = gameDir.toAbsolutePath();
+        }
+        emit(event("start")
+                .with("pack", pack)
+                .with("gameDir", installer.gameDir.toString())
+                .with("options", installer.downloadOptions.toString()));
+
+        long configStart = System.nanoTime();
+        InstallerConfig config = installer.loadConfigNow(offline);
+        JsonArray names = new JsonArray();
+        config.configNames.forEach(names::add);
+        long configMillis = millisSince(configStart);
+        emit(event("config").with("packs", names).with("ms", configMillis));
+
+        if (list) {
+            return EXIT_OK;
+        }
+        if (!jobs.isEmpty()) {
+            return executeBatch(installer, jobs, progressMillis, configMillis);
+        }
+        if (!config.configs.containsKey(pack)) {
+            emit(event("error").with("message", "No existe el modpack: " + pack));
+            return EXIT_USAGE;
+        }
+        if (!Files.isDirectory(installer.gameDir)) {
+            emit(event("error").with("message", "El directorio no existe: " + installer.gameDir));
+            return EXIT_USAGE;
+        }
+        installer.selectedInstall = pack;
+
+        DownloadProgress progress = new DownloadProgress(pack);
+        ScheduledExecutorService ticker = ticker(progress, progressMillis);
+
+        long installStart = System.nanoTime();
+        try {
+            installer.install(progress);
+            progress.phase(DownloadProgress.Phase.DONE);
+        } catch (IOException | DownloadException | RuntimeException e) {
+            e.printStackTrace();
+            shutdown(ticker);
+            emit(event("error").with("message", e.getMessage() != null ? e.getMessage() : e.toString())
+                    .with("ms", millisSince(start)));
+            return EXIT_FAILED;
+        }
+        shutdown(ticker);
+
+        DownloadProgress.Snapshot last = progress.sample();
+        emit(progressEvent(last));
+        emit(event("done")
+                .with("pack", pack)
+                .with("bytes", last.bytesDone)
+                .with("files", last.filesDone)
+                .with("entries", last.entriesDone)
+                .with("configMs", configMillis)
+                .with("installMs", millisSince(installStart))
+                .with("totalMs", millisSince(start)));
+        return EXIT_OK;
+    }
+
+    private int executeRollback(Path gameDir) {
+        emit(event("start").with("rollback", gameDir.toAbsolutePath().toString()));
+        try {
+            if (!BundleInstaller.rollback(gameDir.toAbsolutePath())) {
+                emit(event("error").with("message", "No hay instalación anterior guardada en " + gameDir));
+                return EXIT_FAILED;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            emit(event("error").with("message", e.getMessage()).with("ms", millisSince(start)));
+            return EXIT_FAILED;
+        }
+        emit(event("done").with("rollback", gameDir.toAbsolutePath().toString()).with("totalMs", millisSince(start)));
+        return EXIT_OK;
+    }
+
+    private int executeBatch(BundleInstaller installer, List<InstallJob> jobs, long progressMillis,
+                             long configMillis) {
+        for (InstallJob job : jobs) {
+            if (!installer.installerConfig.configs.containsKey(job.pack)) {
+                emit(event("error").with("message", "No existe el modpack: " + job.pack));
+                return EXIT_USAGE;
+            }
+            if (!Files.isDirectory(job.gameDir)) {
+                emit(event("error").with("message", "El directorio no existe: " + job.gameDir));
+                return EXIT_USAGE;
+            }
+        }
+        for (InstallJob job : jobs) {
+            emit(event("job").with("pack", job.pack).with("gameDir", job.gameDir.toString()));
+        }
+
+        DownloadProgress progress = new DownloadProgress("lote");
+        ScheduledExecutorService ticker = ticker(progress, progressMillis);
+        long installStart = System.nanoTime();
+        try {
+            installer.installBatch(jobs, progress);
+            progress.phase(DownloadProgress.Phase.DONE);
+        } catch (IOException | DownloadException | RuntimeException e) {
+            e.printStackTrace();
+            shutdown(ticker);
+            emit(event("error").with("message", e.getMessage() != null ? e.getMessage() : e.toString())
+                    .with("ms", millisSince(start)));
+            return EXIT_FAILED;
+        }
+        shutdown(ticker);
+
+        DownloadProgress.Snapshot last = progress.sample();
+        emit(progressEvent(last));
+        emit(event("done")
+                .with("jobs", jobs.size())
+                .with("bytes", last.bytesDone)
+                .with("files", last.filesDone)
+                .with("entries", last.entriesDone)
+                .with("configMs", configMillis)
+                .with("installMs", millisSince(installStart))
+                .with("totalMs", millisSince(start)));
+        return EXIT_OK;
+    }
+
+    private ScheduledExecutorService ticker(DownloadProgress progress, long progressMillis) {
+        ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cli-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(() -> emit(progressEvent(progress.sample())),
+                progressMillis, progressMillis, TimeUnit.MILLISECONDS);
+        return ticker;
+    }
+
+    private static Event progressEvent(DownloadProgress.Snapshot snapshot) {
+        return event("progress")
+                .with("phase", snapshot.phase.name().toLowerCase(Locale.ROOT))
+                .with("percent", snapshot.percent())
+                .with("bytes", snapshot.bytesDone)
+                .with("bytesTotal", snapshot.bytesTotal)
+                .with("files", snapshot.filesDone)
+                .with("filesTotal", snapshot.filesTotal)
+                .with("entries", snapshot.entriesDone)
+                .with("entriesTotal", snapshot.entriesTotal)
+                .with("rate", Math.round(snapshot.rate))
+                .with("avgRate", Math.round(snapshot.averageRate))
+                .with("etaSeconds", snapshot.etaSeconds);
+    }
+
+    private static void shutdown(ScheduledExecutorService ticker) {
+        ticker.shutdown();
+        try {
+            ticker.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // println de PrintStream ya es atómico por línea
+    private void emit(Event event) {
+        event.json.addProperty("t", millisSince(start));
+        events.println(GSON.toJson(event.json));
+    }
+
+    private static Event event(String type) {
+        return new Event(type);
+    }
+
+    private static long millisSince(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - nanos);
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length || args[index].startsWith("--")) {
+            throw new IllegalArgumentException("Falta el valor de " + option);
+        }
+        return args[index];
+    }
+
+    // <nombre>=<ruta>; el nombre no puede llevar '=', la ruta sí
+    private static InstallJob job(String spec) {
+        int separator = spec.indexOf('=');
+        if (separator <= 0 || separator == spec.length() - 1) {
+            throw new IllegalArgumentException("Trabajo inválido, se espera <nombre>=<ruta>: " + spec);
+        }
+        return new InstallJob(spec.substring(0, separator).trim(),
+                Paths.get(spec.substring(separator + 1).trim()).toAbsolutePath());
+    }
+
+    private static List<InstallJob> readJobs(Path file) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("No se pudo leer " + file + ": " + e.getMessage());
+        }
+        List<InstallJob> jobs = new ArrayList<>();
+        for (String line : lines) {
+            line = line.trim();
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                jobs.add(job(line));
+            }
+        }
+        return jobs;
+    }
+
+    private static String number(String[] args, int index, String option) {
+        String value = value(args, index, option);
+        try {
+            Long.parseLong(value);
+            return value;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(option + " espera un número: " + value);
+        }
+    }
+
+    /**
+     * Para las opciones que el instalador lee como {@code int}: un entero entre {@code min} e {@link Integer#MAX_VALUE}.
+     */
+    private static String count(String[] args, int index, String option, int min) {
+        String value = value(args, index, option);
+        try {
+            if (Integer.parseInt(value) >= min) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // Incluye los que no caben en un int: mismo mensaje que un valor fuera de rango
+        }
+        throw new IllegalArgumentException(option + " espera un entero entre " + min + " y "
+                + Integer.MAX_VALUE + ": " + value);
+    }
+
+    private static final class Event {
+        final JsonObject json = new JsonObject();
+
+        Event(String type) {
+            json.addProperty("event", type);
+        }
+
+        Event with(String key, String value) {
+            json.addProperty(key, value);
+            return this;
+        }
+
+        Event with(String key, Number value) {
+            json.addProperty(key, value);
+            return this;
+        }
+
+        Event with(String key, JsonArray value) {
+            json.add(key, value);
+            return this;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package bundle.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Un archivo descargable de un modpack. {@code sha256} y {@code size} son opcionales;
+ * cuando la configuración los declara, la descarga se verifica contra ellos.
+ * Un {@link Type#ARCHIVE} se extrae en el directorio de juego; un {@link Type#FILE}
+ * se coloca tal cual en {@code path}, relativo al directorio de juego.
+ * {@code mirrors} son otras URL con el mismo archivo; {@code url} sigue siendo su identidad
+ * para la caché y los parciales.
+ */
+public final class Artifact {
+
+    public enum Type {
+        ARCHIVE,
+        FILE
+    }
+
+    public final String url;
+    public final String sha256;
+    public final long size;
+    public final Type type;
+    public final String path;
+    public final List<String> mirrors;
+
+    public Artifact(String url, String sha256, long size, Type type, String path, List<String> mirrors) {
+        this.url = url;
+        this.sha256 = sha256;
+        this.size = size;
+        this.type = type;
+        this.path = path;
+        this.mirrors = List.copyOf(mirrors);
+    }
+
+    public Artifact(String url, String sha256, long size, Type type, String path) {
+        this(url, sha256, size, type, path, List.of());
+    }
+
+    public Artifact(String url, String sha256, long size) {
+        this(url, sha256, size, Type.ARCHIVE, null);
+    }
+
+    public Artifact(String url) {
+        this(url, null, -1);
+    }
+
+    public boolean isArchive() {
+        return type == Type.ARCHIVE;
+    }
+
+    /**
+     * La URL principal seguida de los espejos.
+     */
+    public List<String> sources() {
+        List<String> sources = new ArrayList<>(1 + mirrors.size());
+        sources.add(url);
+        sources.addAll(mirrors);
+        return sources;
+    }
+
+    @Override
+    public String toString() {
+        return "Artifact{" +
+                "url='" + url + '\'' +
+                ", type=" + type +
+                (path != null ? ", path='" + path + '\'' : "") +
+                (!mirrors.isEmpty() ? ", mirrors=" + mirrors : "") +
+                (sha256 != null ? ", sha256=" + sha256 : "") +
+                (size >= 0 ? ", size=" + size : "") +
+                '}';
+    }
+}
@@ -0,0 +1,73 @@
+package bundle.config;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Última configuración remota válida, guardada junto con el ETag de la fuente que la sirvió.
+ * Permite arrancar sin esperar a la red y revalidar después con una petición condicional.
+ */
+public final class ConfigCache {
+
+    static final String FILE_NAME = "remote-config.json";
+    private static final Gson GSON = new Gson();
+
+    private final Path file;
+
+    public ConfigCache(Path installerDir) {
+        this.file = installerDir.resolve(FILE_NAME);
+    }
+
+    public static final class Entry {
+        public final JsonObject config;
+        public final String source;
+        public final String etag;
+        public final long fetchedAt;
+
+        public Entry(JsonObject config, String source, String etag, long fetchedAt) {
+            this.config = config;
+            this.source = source;
+            this.etag = etag;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+
+    /**
+     * La copia guardada, o null si no hay ninguna o no se puede leer.
+     */
+    public Entry load() {
+        if (!Files.exists(file)) {
+            return null;
+        }
+
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            Entry entry = GSON.fromJson(reader, Entry.class);
+            return entry != null && entry.config != null ? entry : null;
+        } catch (IOException | JsonParseException e) {
+            System.err.println("⚠ Configuración en caché ilegible, se descargará de nuevo: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public void save(Entry entry) {
+        try {
+            Files.createDirectories(file.getParent());
+            Path tmp = file.resolveSibling(FILE_NAME + ".tmp");
+            try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                GSON.toJson(entry, writer);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("⚠ No se pudo guardar la configuración en caché: " + e.getMessage());
+        }
+    }
+}
@@ -3,12 +3,28 @@ package bundle.config;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 public final class ConfigParser {
 
+    private static final Pattern SHA256_HEX = Pattern.compile("[0-9a-f]{64}");
+
     private ConfigParser() { }
 
+    /**
+     * Cada modpack es una URL, un objeto {@code {"url": ..., "sha256": ..., "size": ...}}
+     * con hash y tamaño opcionales, o {@code {"artifacts": [...]}} con varios de esos objetos.
+     * Un artefacto con {@code "path"} (o {@code "type": "file"}) se coloca tal cual en esa ruta;
+     * el resto son ZIP que se extraen en el directorio de juego. {@code "mirrors"} es una lista
+     * opcional de URL alternativas con el mismo archivo.
+     */
     public static InstallerConfig parse(JsonObject root) throws ConfigParseException {
         if (root == null) {
             throw new ConfigParseException("Config JSON is null");
@@ -23,23 +39,158 @@ public final class ConfigParser {
 
         for (Map.Entry<String, JsonElement> entry : modpacks.entrySet()) {
             String modpackName = entry.getKey();
-            JsonElement urlElement = entry.getValue();
+            JsonElement value = entry.getValue();
 
-            if (!urlElement.isJsonPrimitive() || !urlElement.getAsJsonPrimitive().isString()) {
-                System.err.println("Advertencia: Modpack '" + modpackName + "' no tiene una URL válida, se omitirá.");
-                continue;
+            List<Artifact> artifacts = new ArrayList<>();
+            if (value.isJsonObject() && value.getAsJsonObject().has("artifacts")) {
+                JsonElement list = value.getAsJsonObject().get("artifacts");
+                if (!list.isJsonArray() || list.getAsJsonArray().size() == 0) {
+                    System.err.println("Advertencia: Modpack '" + modpackName + "' no tiene artefactos válidos, se omitirá.");
+                    continue;
+                }
+                for (JsonElement element : list.getAsJsonArray()) {
+                    Artifact artifact = parseArtifact(modpackName, element);
+                    if (artifact == null) {
+                        // Un pack incompleto no se puede instalar
+                        artifacts = null;
+                        break;
+                    }
+                    artifacts.add(artifact);
+                }
+            } else {
+                Artifact artifact = parseArtifact(modpackName, value);
+                artifacts = artifact != null ? List.of(artifact) : null;
             }
-
-            String downloadUrl = urlElement.getAsString().trim();
-            if (downloadUrl.isEmpty()) {
-                System.err.println("Advertencia: Modpack '" + modpackName + "' tiene una URL vacía, se omitirá.");
+            if (artifacts == null) {
                 continue;
             }
 
-            DownloadConfig downloadConfig = new DownloadConfig(modpackName, downloadUrl);
+            DownloadConfig downloadConfig = new DownloadConfig(modpackName, artifacts);
             builder.with(modpackName, downloadConfig);
         }
 
         return builder.build();
     }
-}
\ No newline at end of file
+
+    private static Artifact parseArtifact(String modpackName, JsonElement element) {
+        JsonElement urlElement = element;
+        JsonObject object = null;
+        if (element.isJsonObject()) {
+            object = element.getAsJsonObject();
+            urlElement = object.get("url");
+        }
+
+        if (urlElement == null || !urlElement.isJsonPrimitive() || !urlElement.getAsJsonPrimitive().isString()) {
+            System.err.println("Advertencia: Modpack '" + modpackName + "' no tiene una URL válida, se omitirá.");
+            return null;
+        }
+
+        String downloadUrl = urlElement.getAsString().trim();
+        if (downloadUrl.isEmpty()) {
+            System.err.println("Advertencia: Modpack '" + modpackName + "' tiene una URL vacía, se omitirá.");
+            return null;
+        }
+
+        if (object == null) {
+            return new Artifact(downloadUrl);
+        }
+
+        String sha256 = null;
+        if (object.has("sha256")) {
+            JsonElement hash = object.get("sha256");
+            sha256 = hash.isJsonPrimitive() ? hash.getAsString().trim().toLowerCase(Locale.ROOT) : "";
+            if (!SHA256_HEX.matcher(sha256).matches()) {
+                System.err.println("Advertencia: Modpack '" + modpackName + "' tiene un sha256 inválido, se omitirá.");
+                return null;
+            }
+        }
+
+        long size = -1;
+        if (object.has("size")) {
+            try {
+                size = object.get("size").getAsLong();
+            } catch (NumberFormatException | UnsupportedOperationException | IllegalStateException e) {
+                size = -1;
+            }
+            if (size < 0) {
+                System.err.println("Advertencia: Modpack '" + modpackName + "' tiene un tamaño inválido, se omitirá.");
+                return null;
+            }
+        }
+
+        String path = null;
+        if (object.has("path")) {
+            path = normalizePath(object.get("path"));
+            if (path == null) {
+                System.err.println("Advertencia: Modpack '" + modpackName + "' tiene una ruta inválida, se omitirá.");
+                return null;
+            }
+        }
+
+        List<String> mirrors = new ArrayList<>();
+        if (object.has("mirrors")) {
+            JsonElement list = object.get("mirrors");
+            if (!list.isJsonArray()) {
+                System.err.println("Advertencia: Modpack '" + modpackName + "' tiene una lista de espejos inválida, se omitirá.");
+                return null;
+            }
+            for (JsonElement mirror : list.getAsJsonArray()) {
+                String mirrorUrl = mirror.isJsonPrimitive() && mirror.getAsJsonPrimitive().isString()
+                        ? mirror.getAsString().trim() : "";
+                if (mirrorUrl.isEmpty()) {
+                    System.err.println("Advertencia: Modpack '" + modpackName + "' tiene un espejo sin URL válida, se omitirá.");
+                    return null;
+                }
+                if (!mirrorUrl.equals(downloadUrl) && !mirrors.contains(mirrorUrl)) {
+                    mirrors.add(mirrorUrl);
+                }
+            }
+        }
+
+        Artifact.Type type = path != null ? Artifact.Type.FILE : Artifact.Type.ARCHIVE;
+        if (object.has("type")) {
+            String declared = object.get("type").isJsonPrimitive() ? object.get("type").getAsString() : "";
+            switch (declared.toLowerCase(Locale.ROOT)) {
+                case "archive":
+                case "zip":
+                    type = Artifact.Type.ARCHIVE;
+                    break;
+                case "file":
+                    type = Artifact.Type.FILE;
+                    break;
+                default:
+                    System.err.println("Advertencia: Modpack '" + modpackName + "' tiene un tipo desconocido '" + declared + "', se omitirá.");
+                    return null;
+            }
+        }
+        if (type == Artifact.Type.FILE && path == null) {
+            System.err.println("Advertencia: Modpack '" + modpackName + "' tiene un archivo sin 'path', se omitirá.");
+            return null;
+        }
+
+        return new Artifact(downloadUrl, sha256, size, type, type == Artifact.Type.FILE ? path : null, mirrors);
+    }
+
+    /**
+     * Ruta relativa con '/' que no puede salir del directorio de juego; null si no es válida.
+     */
+    private static String normalizePath(JsonElement element) {
+        if (!element.isJsonPrimitive()) {
+            return null;
+        }
+        String raw = element.getAsString().trim().replace('\\', '/');
+        if (raw.isEmpty() || raw.startsWith("/") || raw.matches("^[A-Za-z]:.*")) {
+            return null;
+        }
+        try {
+            Path normalized = Paths.get(raw).normalize();
+            String path = normalized.toString().replace('\\', '/');
+            if (path.isEmpty() || path.equals("..") || path.startsWith("../")) {
+                return null;
+            }
+            return path;
+        } catch (InvalidPathException e) {
+            return null;
+        }
+    }
+}
@@ -1,21 +1,28 @@
 package bundle.config;
 
 import java.util.List;
+import java.util.stream.Collectors;
 
 public final class DownloadConfig {
     public final String name;
     public final List<String> urls;
+    public final List<Artifact> artifacts;
 
     public DownloadConfig(String name, String url) {
+        this(name, List.of(new Artifact(url)));
+    }
+
+    public DownloadConfig(String name, List<Artifact> artifacts) {
         this.name = name;
-        this.urls = List.of(url);
+        this.artifacts = List.copyOf(artifacts);
+        this.urls = this.artifacts.stream().map(artifact -> artifact.url).collect(Collectors.toUnmodifiableList());
     }
 
     @Override
     public String toString() {
         return "DownloadConfig{" +
                 "name='" + name + '\'' +
-                ", urls=" + urls +
+                ", artifacts=" + artifacts +
                 '}';
     }
-}
\ No newline at end of file
+}
@@ -3,10 +3,21 @@ package bundle.config;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 
-import java.io.*;
+import bundle.net.HttpTransport;
+
 import java.net.HttpURLConnection;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 public final class RemoteConfigLoader {
 
@@ -16,113 +27,196 @@ public final class RemoteConfigLoader {
     private static final String FALLBACK_RAW_URL =
             "https://gist.githubusercontent.com/MateoF024/50ece138114a907d053a2622ff900fa4/raw/installer_config.json";
 
-    private static final int CONNECT_TIMEOUT = 10_000;
-    private static final int READ_TIMEOUT = 15_000;
+    // La configuración es pequeña: se limita la petición completa, no solo la conexión
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(25);
+    // Si la API no ha respondido en este tiempo se lanza también la URL raw
+    private static final Duration HEDGE_DELAY = Duration.ofMillis(1500);
+
+    private static final String SOURCE_API = "GitHub API";
+    private static final String SOURCE_RAW = "URL raw";
 
     private RemoteConfigLoader() { }
 
     public static JsonObject loadRemoteConfig() {
+        ConfigCache.Entry entry = loadRemoteConfig(null);
+        return entry != null ? entry.config : null;
+    }
+
+    /**
+     * Consulta la API de GitHub y, si tarda más de {@link #HEDGE_DELAY} o falla, también la URL raw.
+     * Gana la primera configuración válida y la otra petición se cancela.
+     * Con {@code cached}, la fuente que la sirvió recibe If-None-Match; si responde 304 se
+     * devuelve la misma instancia de {@code cached}, sin volver a descargar ni parsear nada.
+     */
+    public static ConfigCache.Entry loadRemoteConfig(ConfigCache.Entry cached) {
+        return loadRemoteConfig(cached, URI.create(GITHUB_API_URL), URI.create(FALLBACK_RAW_URL));
+    }
+
+    /**
+     * Igual que {@link #loadRemoteConfig(ConfigCache.Entry)} pero contra otras direcciones,
+     * por ejemplo un servidor local en las pruebas.
+     */
+    public static ConfigCache.Entry loadRemoteConfig(ConfigCache.Entry cached, URI apiUrl, URI rawUrl) {
         System.out.println("=== Cargando configuración remota ===");
 
-        JsonObject config = loadFromGitHubAPI();
-        if (config != null) {
-            System.out.println("✓ Configuración cargada desde GitHub API");
-            return config;
+        HttpTransport transport = HttpTransport.shared();
+        long start = System.nanoTime();
+        CompletableFuture<ConfigCache.Entry> winner = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(2);
+        AtomicReference<String> winnerSource = new AtomicReference<>();
+
+        System.out.println("Consultando GitHub API: " + apiUrl);
+        CompletableFuture<HttpResponse<String>> api = send(transport, apiRequest(transport, apiUrl, etagFor(cached, SOURCE_API)));
+        CompletableFuture<Void> startRaw = new CompletableFuture<>();
+        CompletableFuture<CompletableFuture<HttpResponse<String>>> raw = startRaw.thenApply(ignored -> {
+            System.out.println("Consultando URL raw: " + rawUrl);
+            CompletableFuture<HttpResponse<String>> request =
+                    send(transport, rawRequest(transport, rawUrl, etagFor(cached, SOURCE_RAW)));
+            request.whenComplete((response, error) -> offer(winner, pending, winnerSource, SOURCE_RAW,
+                    parse(response, error, SOURCE_RAW, cached, RemoteConfigLoader::fromRaw)));
+            return request;
+        });
+
+        api.whenComplete((response, error) -> {
+            ConfigCache.Entry entry = parse(response, error, SOURCE_API, cached, RemoteConfigLoader::fromGistResponse);
+            if (entry == null) {
+                // Sin esperar al retardo: la API ya no va a dar nada
+                startRaw.complete(null);
+            }
+            offer(winner, pending, winnerSource, SOURCE_API, entry);
+        });
+        startRaw.completeOnTimeout(null, HEDGE_DELAY.toMillis(), TimeUnit.MILLISECONDS);
+
+        ConfigCache.Entry config = winner.completeOnTimeout(null, REQUEST_TIMEOUT.plus(HEDGE_DELAY).toMillis(),
+                TimeUnit.MILLISECONDS).join();
+
+        // La petición perdedora ya no interesa
+        api.cancel(true);
+        if (!startRaw.cancel(false)) {
+            raw.thenAccept(request -> request.cancel(true));
         }
 
-        System.out.println("⚠ API falló, intentando con URL raw como fallback...");
-        config = loadFromRawUrl(FALLBACK_RAW_URL);
-        if (config != null) {
-            System.out.println("✓ Configuración cargada desde URL raw");
-            return config;
+        if (config == null) {
+            System.err.println("✗ No se pudo cargar la configuración remota");
+        } else {
+            String state = config == cached ? "sin cambios en " : "cargada desde ";
+            System.out.println("✓ Configuración " + state + winnerSource.get()
+                    + " (" + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms)");
         }
+        return config;
+    }
 
-        System.err.println("✗ No se pudo cargar la configuración remota");
-        return null;
+    private static String etagFor(ConfigCache.Entry cached, String source) {
+        return cached != null && source.equals(cached.source) ? cached.etag : null;
     }
 
-    private static JsonObject loadFromGitHubAPI() {
-        try {
-            System.out.println("Consultando GitHub API: " + GITHUB_API_URL);
-
-            URL url = new URL(GITHUB_API_URL);
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-
-            connection.setRequestMethod("GET");
-            connection.setConnectTimeout(CONNECT_TIMEOUT);
-            connection.setReadTimeout(READ_TIMEOUT);
-            connection.setInstanceFollowRedirects(true);
-            connection.setRequestProperty("Accept", "application/vnd.github+json");
-            connection.setRequestProperty("User-Agent", "ModpackInstaller/1.0");
-
-            int responseCode = connection.getResponseCode();
-
-            if (responseCode == HttpURLConnection.HTTP_OK) {
-                try (InputStream inputStream = connection.getInputStream();
-                     InputStreamReader reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8)) {
-
-                    Gson gson = new Gson();
-                    JsonObject gistResponse = gson.fromJson(reader, JsonObject.class);
-
-                    if (gistResponse.has("files")) {
-                        JsonObject files = gistResponse.getAsJsonObject("files");
-                        if (files.has(FILE_NAME)) {
-                            JsonObject fileInfo = files.getAsJsonObject(FILE_NAME);
-                            if (fileInfo.has("content")) {
-                                String content = fileInfo.get("content").getAsString();
-                                return gson.fromJson(content, JsonObject.class);
-                            }
-                        }
-                    }
-
-                    System.err.println("✗ No se encontró el archivo '" + FILE_NAME + "' en el Gist");
-                }
-            } else {
-                System.err.println("✗ Error HTTP en GitHub API: " + responseCode);
+    private static void offer(CompletableFuture<ConfigCache.Entry> winner, AtomicInteger pending,
+                              AtomicReference<String> winnerSource, String source, ConfigCache.Entry config) {
+        if (config != null && hasModpacks(config.config)) {
+            if (winnerSource.compareAndSet(null, source)) {
+                winner.complete(config);
             }
-
-        } catch (Exception e) {
-            System.err.println("✗ Error al consultar GitHub API: " + e.getMessage());
+            return;
+        }
+        if (pending.decrementAndGet() == 0) {
+            winner.complete(null);
         }
+    }
 
-        return null;
+    private static CompletableFuture<HttpResponse<String>> send(HttpTransport transport, HttpRequest request) {
+        // El timeout de la petición solo cubre las cabeceras; orTimeout acota también el cuerpo
+        return transport.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .orTimeout(REQUEST_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
     }
 
-    private static JsonObject loadFromRawUrl(String rawUrl) {
-        try {
-            System.out.println("Consultando URL raw: " + rawUrl);
+    private static HttpRequest apiRequest(HttpTransport transport, URI apiUrl, String etag) {
+        HttpRequest.Builder request = transport.get(apiUrl)
+                .timeout(REQUEST_TIMEOUT)
+                .setHeader("Accept", "application/vnd.github+json")
+                .setHeader("User-Agent", "ModpackInstaller/1.0");
+        if (etag != null) {
+            // Las respuestas 304 no cuentan para el límite de peticiones de la API
+            request.header("If-None-Match", etag);
+        }
+        return request.build();
+    }
 
-            URL url = new URL(rawUrl);
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    private static HttpRequest rawRequest(HttpTransport transport, URI rawUrl, String etag) {
+        HttpRequest.Builder request = transport.get(rawUrl)
+                .timeout(REQUEST_TIMEOUT)
+                .setHeader("User-Agent", "Mozilla/5.0 ModpackInstaller/1.0")
+                .setHeader("Accept", "application/json, text/plain, */*")
+                // Revalidar con el origen, pero permitiendo un 304
+                .header("Cache-Control", "no-cache");
+        if (etag != null) {
+            request.header("If-None-Match", etag);
+        }
+        return request.build();
+    }
 
-            connection.setRequestMethod("GET");
-            connection.setConnectTimeout(CONNECT_TIMEOUT);
-            connection.setReadTimeout(READ_TIMEOUT);
-            connection.setInstanceFollowRedirects(true);
-            connection.setRequestProperty("User-Agent", "Mozilla/5.0 ModpackInstaller/1.0");
-            connection.setRequestProperty("Accept", "application/json, text/plain, */*");
-            connection.setRequestProperty("Cache-Control", "no-cache, no-store, must-revalidate");
+    private static ConfigCache.Entry parse(HttpResponse<String> response, Throwable error, String source,
+                                           ConfigCache.Entry cached, Function<String, JsonObject> parser) {
+        if (error != null) {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (!(cause instanceof CancellationException)) {
+                String message = cause instanceof TimeoutException
+                        ? "tiempo de espera agotado (" + REQUEST_TIMEOUT.toSeconds() + "s)"
+                        : cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+                System.err.println("✗ Error al consultar " + source + ": " + message);
+            }
+            return null;
+        }
 
-            int responseCode = connection.getResponseCode();
+        int responseCode = response.statusCode();
+        if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && etagFor(cached, source) != null) {
+            return cached;
+        }
+        if (responseCode != HttpURLConnection.HTTP_OK) {
+            System.err.println("✗ Error HTTP en " + source + ": " + responseCode);
+            return null;
+        }
 
-            if (responseCode == HttpURLConnection.HTTP_OK) {
-                try (InputStream inputStream = connection.getInputStream();
-                     InputStreamReader reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8)) {
+        try {
+            JsonObject config = parser.apply(response.body());
+            if (config == null) {
+                return null;
+            }
+            String etag = response.headers().firstValue("ETag").orElse(null);
+            return new ConfigCache.Entry(config, source, etag, System.currentTimeMillis());
+        } catch (Exception e) {
+            System.err.println("✗ Respuesta inválida de " + source + ": " + e.getMessage());
+            return null;
+        }
+    }
 
-                    Gson gson = new Gson();
-                    return gson.fromJson(reader, JsonObject.class);
+    private static JsonObject fromGistResponse(String body) {
+        Gson gson = new Gson();
+        JsonObject gistResponse = gson.fromJson(body, JsonObject.class);
+
+        if (gistResponse.has("files")) {
+            JsonObject files = gistResponse.getAsJsonObject("files");
+            if (files.has(FILE_NAME)) {
+                JsonObject fileInfo = files.getAsJsonObject(FILE_NAME);
+                if (fileInfo.has("content")) {
+                    String content = fileInfo.get("content").getAsString();
+                    return gson.fromJson(content, JsonObject.class);
                 }
-            } else {
-                System.err.println("✗ Error HTTP en URL raw: " + responseCode);
             }
-
-        } catch (Exception e) {
-            System.err.println("✗ Error al cargar desde URL raw: " + e.getMessage());
         }
 
+        System.err.println("✗ No se encontró el archivo '" + FILE_NAME + "' en el Gist");
         return null;
     }
 
+    private static JsonObject fromRaw(String body) {
+        return new Gson().fromJson(body, JsonObject.class);
+    }
+
+    private static boolean hasModpacks(JsonObject config) {
+        return config.has("modpacks") && config.get("modpacks").isJsonObject()
+                && config.getAsJsonObject("modpacks").size() > 0;
+    }
+
     public static boolean isValidConfig(JsonObject config) {
         if (config == null) {
             return false;
@@ -150,4 +244,12 @@ public final class RemoteConfigLoader {
         }
         return null;
     }
-}
\ No newline at end of file
+
+    public static ConfigCache.Entry loadAndValidateRemoteConfig(ConfigCache.Entry cached) {
+        ConfigCache.Entry entry = loadRemoteConfig(cached);
+        if (entry != null && isValidConfig(entry.config)) {
+            return entry;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,123 @@
+package bundle.download;
+
+import bundle.net.HttpTransport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+
+/**
+ * Escribe el cuerpo de una respuesta directamente en un {@link FileChannel} a partir de una
+ * posición, según llegan los buffers del cliente HTTP. El resultado es el número de bytes escritos.
+ */
+final class ChannelBodySubscriber implements HttpResponse.BodySubscriber<Long>, Closeable {
+
+    interface WriteListener {
+        void written(long position, int bytes);
+    }
+
+    private final FileChannel channel;
+    private final long start;
+    private final WriteListener listener;
+    private final HttpTransport.IdleGuard guard;
+    private final CompletableFuture<Long> result = new CompletableFuture<>();
+    private volatile Flow.Subscription subscription;
+    private long position;
+
+    ChannelBodySubscriber(FileChannel channel, long start, HttpTransport transport, WriteListener listener) {
+        this.channel = channel;
+        this.start = start;
+        this.position = start;
+        this.listener = listener;
+        this.guard = transport.guard(this);
+        result.whenComplete((bytes, error) -> guard.close());
+    }
+
+    /**
+     * Subscriptor para respuestas que no se quieren leer: cancela el cuerpo en cuanto empieza.
+     */
+    static HttpResponse.BodySubscriber<Long> rejecting() {
+        CompletableFuture<Long> body = CompletableFuture.completedFuture(-1L);
+        return new HttpResponse.BodySubscriber<>() {
+            @Override
+            public CompletionStage<Long> getBody() {
+                return body;
+            }
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.cancel();
+            }
+
+            @Override
+            public void onNext(List<ByteBuffer> item) { }
+
+            @Override
+            public void onError(Throwable throwable) { }
+
+            @Override
+            public void onComplete() { }
+        };
+    }
+
+    @Override
+    public CompletionStage<Long> getBody() {
+        return result;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(1);
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> buffers) {
+        try {
+            for (ByteBuffer buffer : buffers) {
+                while (buffer.hasRemaining()) {
+                    int written = channel.write(buffer, position);
+                    guard.touch(written);
+                    position += written;
+                    listener.written(position, written);
+                }
+            }
+        } catch (IOException e) {
+            subscription.cancel();
+            result.completeExceptionally(e);
+            return;
+        }
+        subscription.request(1);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        result.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        result.complete(position - start);
+    }
+
+    /**
+     * Aborta la transferencia; lo usa el control de inactividad y la cancelación de segmentos.
+     */
+    @Override
+    public void close() {
+        Flow.Subscription current = subscription;
+        if (current != null) {
+            current.cancel();
+        }
+        result.completeExceptionally(guard.isExpired()
+                ? new HttpTimeoutException(guard.reason())
+                : new IOException("Transferencia cancelada"));
+    }
+}
@@ -0,0 +1,289 @@
+package bundle.download;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Caché local de descargas. El contenido se guarda una sola vez por su SHA-256 en {@code objects/}
+ * y un índice por URL en {@code index/} recuerda el validador del servidor para revalidar con
+ * If-None-Match / If-Modified-Since. La fecha de modificación de cada objeto hace de último acceso
+ * para expulsar por LRU cuando se supera el tamaño máximo.
+ * <p>
+ * Solo los ZIP, que se extraen y se borran, comparten el objeto con un enlace duro. Los archivos
+ * sueltos se copian: el juego o el usuario pueden editarlos en su sitio y el cambio llegaría a la caché.
+ */
+public final class DownloadCache {
+
+    private final Path objectsDir;
+    private final Path indexDir;
+    private final Path tmpDir;
+    private final long maxBytes;
+
+    public DownloadCache(Path root, long maxBytes) {
+        this.objectsDir = root.resolve("objects");
+        this.indexDir = root.resolve("index");
+        this.tmpDir = root.resolve("tmp");
+        this.maxBytes = maxBytes;
+    }
+
+    public static final class Entry {
+        public final String url;
+        public final String sha256;
+        public final String fileName;
+        public final long size;
+        public final String etag;
+        public final String lastModified;
+        final Path object;
+
+        private Entry(String url, String sha256, String fileName, long size, String etag, String lastModified, Path object) {
+            this.url = url;
+            this.sha256 = sha256;
+            this.fileName = fileName;
+            this.size = size;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.object = object;
+        }
+
+        @Override
+        public String toString() {
+            return "Entry{" +
+                    "url='" + url + '\'' +
+                    ", sha256='" + sha256 + '\'' +
+                    ", size=" + size +
+                    '}';
+        }
+    }
+
+    /**
+     * Busca la última copia guardada de la URL. Devuelve null si no hay o si su objeto fue expulsado.
+     */
+    public synchronized Entry lookup(String url) {
+        Path indexFile = indexDir.resolve(ResumeState.hashUrl(url) + ".properties");
+        if (!Files.exists(indexFile)) {
+            return null;
+        }
+
+        Properties props = new Properties();
+        try (InputStream in = Files.newInputStream(indexFile)) {
+            props.load(in);
+        } catch (IOException e) {
+            System.err.println("No se pudo leer el índice de caché: " + indexFile + " -> " + e.getMessage());
+            return null;
+        }
+
+        String sha256 = props.getProperty("sha256");
+        if (!url.equals(props.getProperty("url")) || sha256 == null) {
+            return null;
+        }
+
+        Path object = objectsDir.resolve(sha256);
+        long size;
+        try {
+            size = Long.parseLong(props.getProperty("size", "-1"));
+        } catch (NumberFormatException e) {
+            System.err.println("Índice de caché dañado, se ignora: " + indexFile);
+            return null;
+        }
+        try {
+            if (!Files.exists(object) || (size >= 0 && Files.size(object) != size)) {
+                // Un objeto de otro tamaño se modificó fuera de la caché: ya no vale
+                return null;
+            }
+        } catch (IOException e) {
+            return null;
+        }
+
+        return new Entry(url, sha256, props.getProperty("fileName"), size,
+                props.getProperty("etag"), props.getProperty("lastModified"), object);
+    }
+
+    /**
+     * Coloca una copia del objeto en {@code targetDir}. Se intenta un enlace duro para no copiar bytes.
+     */
+    public Path restore(Entry entry, Path targetDir) throws IOException {
+        return restoreTo(entry, targetDir.resolve(entry.fileName), true);
+    }
+
+    /**
+     * Igual que {@link #restore(Entry, Path)}, pero con la ruta final exacta. Con {@code link} a false
+     * siempre se copia, para archivos que quedan instalados y se pueden modificar.
+     */
+    public Path restoreTo(Entry entry, Path target, boolean link) throws IOException {
+        Files.deleteIfExists(target);
+        if (!link || !tryLink(target, entry.object)) {
+            Files.copy(entry.object, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        touch(entry.object);
+        return target;
+    }
+
+    /**
+     * Directorio propio y vacío dentro de la caché para preparar un archivo antes de guardarlo.
+     * Quien lo pide lo borra al terminar.
+     */
+    public Path newTempDir() throws IOException {
+        Files.createDirectories(tmpDir);
+        return Files.createTempDirectory(tmpDir, "dl-");
+    }
+
+    /**
+     * Guarda un archivo recién descargado y actualiza el índice de su URL.
+     */
+    public Entry store(String url, String etag, String lastModified, Path file) throws IOException {
+        return store(url, etag, lastModified, file, null, true);
+    }
+
+    /**
+     * Igual que {@link #store(String, String, String, Path)} cuando el SHA-256 ya se calculó
+     * durante la descarga; con null se calcula aquí. Con {@code link} a false el objeto es una
+     * copia independiente de {@code file}.
+     */
+    public synchronized Entry store(String url, String etag, String lastModified, Path file, String knownSha256,
+                                    boolean link) throws IOException {
+        Files.createDirectories(objectsDir);
+        Files.createDirectories(indexDir);
+
+        Path tmp = Files.createTempFile(objectsDir, "obj-", ".tmp");
+        String sha256;
+        try {
+            // Enlazar en lugar de copiar cuando caché y juego están en el mismo sistema de archivos
+            Files.delete(tmp);
+            if (!link || !tryLink(tmp, file)) {
+                Files.copy(file, tmp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            sha256 = knownSha256 != null ? knownSha256 : sha256Of(tmp);
+
+            Path object = objectsDir.resolve(sha256);
+            if (Files.exists(object)) {
+                Files.delete(tmp);
+            } else {
+                Files.move(tmp, object, StandardCopyOption.ATOMIC_MOVE);
+            }
+            touch(object);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+
+        Properties props = new Properties();
+        props.setProperty("url", url);
+        props.setProperty("sha256", sha256);
+        props.setProperty("fileName", file.getFileName().toString());
+        props.setProperty("size", Long.toString(Files.size(file)));
+        if (etag != null) props.setProperty("etag", etag);
+        if (lastModified != null) props.setProperty("lastModified", lastModified);
+
+        Path indexFile = indexDir.resolve(ResumeState.hashUrl(url) + ".properties");
+        Path indexTmp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(indexTmp)) {
+            props.store(out, null);
+        }
+        Files.move(indexTmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        evict();
+        return lookup(url);
+    }
+
+    /**
+     * Borra los objetos menos usados hasta quedar bajo el límite. Las entradas del índice
+     * que apunten a objetos borrados se ignoran en {@link #lookup(String)}.
+     */
+    private void evict() {
+        if (!Files.isDirectory(objectsDir)) {
+            return;
+        }
+
+        List<Path> objects = new ArrayList<>();
+        long total = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(objectsDir)) {
+            for (Path object : stream) {
+                if (object.getFileName().toString().endsWith(".tmp")) continue;
+                objects.add(object);
+                total += Files.size(object);
+            }
+        } catch (IOException e) {
+            System.err.println("No se pudo recorrer la caché: " + e.getMessage());
+            return;
+        }
+
+        if (total <= maxBytes) {
+            return;
+        }
+
+        objects.sort(Comparator.comparing(DownloadCache::lastAccess));
+        for (Path object : objects) {
+            if (total <= maxBytes) break;
+            try {
+                long size = Files.size(object);
+                Files.delete(object);
+                total -= size;
+                System.out.println("Caché: expulsado " + object.getFileName() + " (" + DownloadManager.formatBytes(size) + ")");
+            } catch (IOException e) {
+                System.err.println("No se pudo expulsar de la caché: " + object + " -> " + e.getMessage());
+            }
+        }
+    }
+
+    private static boolean tryLink(Path link, Path existing) {
+        try {
+            Files.createLink(link, existing);
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    private static FileTime lastAccess(Path object) {
+        try {
+            return Files.readAttributes(object, BasicFileAttributes.class).lastModifiedTime();
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static void touch(Path object) {
+        try {
+            Files.setLastModifiedTime(object, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            System.err.println("No se pudo actualizar la caché: " + object + " -> " + e.getMessage());
+        }
+    }
+
+    static String sha256Of(Path file) throws IOException {
+        MessageDigest digest = newSha256();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+            byte[] buffer = new byte[DownloadManager.BUFFER_SIZE];
+            while (in.read(buffer) != -1) {
+                // solo se consume el flujo para alimentar el digest
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    public static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+
+    public static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -1,27 +1,43 @@
 package bundle.download;
 
+import bundle.config.Artifact;
 import bundle.config.DownloadConfig;
+import bundle.net.HttpTransport;
 
 import java.io.*;
 import java.net.HttpURLConnection;
-import java.net.URL;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpTimeoutException;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 public final class DownloadManager {
 
-    private static final int CONNECT_TIMEOUT = 30_000;
-    private static final int READ_TIMEOUT = 60_000;
     // REVERTIR A BUFFER ORIGINAL QUE FUNCIONABA
-    private static final int BUFFER_SIZE = 64 * 1024; // 64KB - el original que funcionaba bien
+    static final int BUFFER_SIZE = 64 * 1024; // 64KB - el original que funcionaba bien
+
+    // Intentos ante un archivo corrupto o truncado según el hash o tamaño declarados
+    private static final int MAX_INTEGRITY_ATTEMPTS = 2;
 
     private DownloadManager() { }
 
@@ -29,102 +45,774 @@ public final class DownloadManager {
         return downloadFilesTo(targetDir, dlConfig, null);
     }
 
-    public static List<DownloadException> downloadFilesTo(Path targetDir, DownloadConfig dlConfig, ProgressCallback progressCallback) {
-        List<DownloadException> errors = new ArrayList<>();
+    public static List<DownloadException> downloadFilesTo(Path targetDir, DownloadConfig dlConfig, DownloadProgress progress) {
+        return downloadFilesTo(targetDir, dlConfig, DownloadOptions.DEFAULT, progress);
+    }
+
+    public static List<DownloadException> downloadFilesTo(Path targetDir, DownloadConfig dlConfig,
+                                                          DownloadOptions options, DownloadProgress progress) {
+        return downloadArtifactsTo(targetDir, dlConfig.artifacts, options, progress);
+    }
+
+    /**
+     * Descarga varios artefactos a la vez, con como mucho {@link DownloadOptions#concurrency}
+     * en curso y {@link DownloadOptions#perHost} por servidor, todas sumando en {@code progress}.
+     * Los ZIP quedan en {@code targetDir}; los archivos sueltos, en su ruta.
+     */
+    public static List<DownloadException> downloadArtifactsTo(Path targetDir, List<Artifact> artifacts,
+                                                              DownloadOptions options, DownloadProgress progress) {
+        return downloadArtifacts(artifacts, artifact -> targetDir, options, progress, new ConcurrentHashMap<>());
+    }
+
+    /**
+     * Igual que {@link #downloadArtifactsTo}, pero cada artefacto va al directorio que indique
+     * {@code targetDirs} y en {@code downloaded} (que debe admitir escrituras concurrentes)
+     * queda dónde terminó cada uno de los que se descargaron bien.
+     */
+    public static List<DownloadException> downloadArtifacts(List<Artifact> artifacts, Function<Artifact, Path> targetDirs,
+                                                            DownloadOptions options, DownloadProgress progress,
+                                                            Map<Artifact, Path> downloaded) {
+        List<DownloadException> errors = Collections.synchronizedList(new ArrayList<>());
+        List<DownloadProgress.Task> tasks = new ArrayList<>(artifacts.size());
+        for (Artifact artifact : artifacts) {
+            tasks.add(progress != null ? progress.task(artifact.size) : null);
+        }
+
+        if (artifacts.size() == 1) {
+            download(artifacts.get(0), targetDirs, options, tasks.get(0), downloaded, errors);
+            return errors;
+        }
+
+        DownloadScheduler<Integer> scheduler = new DownloadScheduler<>(options.concurrency, options.perHost);
+        for (int i = 0; i < artifacts.size(); i++) {
+            scheduler.add(hostOf(artifacts.get(i).url), i);
+        }
+
+        try {
+            scheduler.run(index -> download(artifacts.get(index), targetDirs, options, tasks.get(index),
+                    downloaded, errors));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            errors.add(new DownloadException("Descargas interrumpidas", e));
+        }
+
+        return new ArrayList<>(errors);
+    }
+
+    private static void download(Artifact artifact, Function<Artifact, Path> targetDirs, DownloadOptions options,
+                                 DownloadProgress.Task task, Map<Artifact, Path> downloaded,
+                                 List<DownloadException> errors) {
+        try {
+            downloaded.put(artifact, downloadVerified(targetDirs.apply(artifact), artifact, options, task));
+        } catch (DownloadException | IOException e) {
+            errors.add(new DownloadException("Descarga fallida desde: " + artifact.url, e));
+        } catch (RuntimeException e) {
+            // También cuenta como fallo: si no, la instalación seguiría sin este artefacto
+            errors.add(new DownloadException("Error inesperado descargando: " + artifact.url, e));
+        }
+    }
+
+    private static String hostOf(String url) {
+        try {
+            String host = new URI(url).getHost();
+            return host != null ? host.toLowerCase(Locale.ROOT) : "";
+        } catch (URISyntaxException e) {
+            return "";
+        }
+    }
 
-        for (String url : dlConfig.urls) {
+    /**
+     * Un archivo corrupto o truncado se vuelve a descargar desde cero antes de dar el error por bueno,
+     * así la extracción nunca llega a empezar con datos malos. Los fallos pasajeros de red se
+     * reintentan según {@link DownloadOptions#retry}, continuando desde lo ya recibido. Con espejos,
+     * un fallo pasa primero al siguiente sin esperar; la espera solo llega cuando fallaron todos.
+     */
+    private static Path downloadVerified(Path targetDir, Artifact artifact, DownloadOptions options,
+                                         DownloadProgress.Task task) throws IOException, DownloadException {
+        List<URI> sources = sourcesOf(artifact, options);
+        int source = 0;
+        // Espejos que han fallado seguidos desde la última espera
+        int failedSources = 0;
+        int integrityAttempts = 1;
+        for (int attempt = 1; ; ) {
             try {
-                downloadTo(targetDir, url, progressCallback);
-            } catch (DownloadException | IOException e) {
-                errors.add(new DownloadException("Descarga fallida desde: " + url, e));
+                return downloadTo(targetDir, artifact, sources, source, options, task);
+            } catch (IntegrityException e) {
+                if (integrityAttempts >= MAX_INTEGRITY_ATTEMPTS) {
+                    throw e;
+                }
+                integrityAttempts++;
+                if (task != null) {
+                    task.restart();
+                }
+                System.err.println("⚠ " + e.getMessage() + ", reintentando (" + integrityAttempts + "/" + MAX_INTEGRITY_ATTEMPTS + ")");
+            } catch (IOException | DownloadException e) {
+                if (sources.size() > 1 && isSourceFailure(e)) {
+                    if (options.mirrors != null) {
+                        options.mirrors.recordFailure(sources.get(source));
+                    }
+                    source = (source + 1) % sources.size();
+                    if (++failedSources < sources.size()) {
+                        System.err.println("⚠ " + RetryPolicy.classify(e).description + " (" + e.getMessage()
+                                + "), probando el espejo " + sources.get(source));
+                        if (task != null) {
+                            task.restart();
+                        }
+                        continue;
+                    }
+                    failedSources = 0;
+                }
+                RetryPolicy retry = options.retry;
+                if (!retry.shouldRetry(attempt, e)) {
+                    throw e;
+                }
+                long delay = retry.delayMillis(attempt, e);
+                System.err.println("⚠ " + RetryPolicy.classify(e).description + " (" + e.getMessage() + "), reintentando "
+                        + artifact.url + " en " + delay + " ms (" + (attempt + 1) + "/" + retry.maxAttempts + ")");
+                // Lo recibido sigue en el parcial: el siguiente intento lo vuelve a sumar al reanudar
+                if (task != null) {
+                    task.restart();
+                }
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Descarga interrumpida: " + artifact.url);
+                }
+                attempt++;
             }
         }
-        return errors;
     }
 
-    private static Path downloadTo(Path targetDir, String urlString, ProgressCallback progressCallback)
+    /**
+     * Las URL del artefacto en el orden en que se probarán: medidas si hay {@link DownloadOptions#mirrors}
+     * y sin conexión o con una sola URL, tal cual.
+     */
+    private static List<URI> sourcesOf(Artifact artifact, DownloadOptions options) throws DownloadException {
+        List<URI> sources = new ArrayList<>();
+        for (String url : artifact.sources()) {
+            sources.add(toUri(url));
+        }
+        if (options.mirrors == null || options.offline) {
+            return sources;
+        }
+        return options.mirrors.rank(sources, options.transport());
+    }
+
+    // Lo que otro espejo puede arreglar: fallos de red y cualquier error HTTP (un 404 solo en ese servidor)
+    private static boolean isSourceFailure(Exception e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof HttpStatusException) {
+                return true;
+            }
+        }
+        return RetryPolicy.classify(e).retryable;
+    }
+
+    /**
+     * Descarga desde {@code sources.get(source)}. La caché y el parcial van por {@link Artifact#url}
+     * aunque los bytes lleguen de un espejo.
+     */
+    private static Path downloadTo(Path targetDir, Artifact artifact, List<URI> sources, int source,
+                                   DownloadOptions options, DownloadProgress.Task task)
             throws IOException, DownloadException {
 
-        URL url = new URL(urlString);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        String urlString = artifact.url;
+        URI uri = sources.get(source);
+        HttpTransport transport = options.transport();
+        if (options.offline) {
+            return serveOffline(targetDir, artifact, options, task);
+        }
+
+        ResumeState state = options.resume
+                ? ResumeState.load(targetDir, urlString)
+                : ResumeState.temporary(targetDir, urlString);
+        DownloadCache.Entry cached = (options.cache != null && !state.canResume())
+                ? options.cache.lookup(urlString)
+                : null;
+
+        if (cached != null && artifact.sha256 != null) {
+            if (artifact.sha256.equals(cached.sha256)) {
+                // La caché es direccionable por contenido: si el hash coincide no hace falta ni revalidar
+                System.out.println("✓ Copia en caché verificada por SHA-256 para " + cached.fileName);
+                state.discard();
+                return serveFromCache(options.cache, cached, targetFor(targetDir, artifact, cached.fileName),
+                    artifact.isArchive(), task);
+            }
+            // La copia guardada ya no es la que pide la configuración
+            cached = null;
+        }
 
-        // CONFIGURACIÓN ORIGINAL QUE FUNCIONABA
-        conn.setConnectTimeout(CONNECT_TIMEOUT);
-        conn.setReadTimeout(READ_TIMEOUT);
-        conn.setInstanceFollowRedirects(true);
-        conn.setRequestProperty("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36");
-        conn.setRequestProperty("Accept", "*/*");
-        conn.setRequestProperty("Connection", "keep-alive");
+        HttpResponse<InputStream> response;
+        try {
+            // Con hash declarado se puede continuar un parcial de otro espejo: el resultado se comprueba al final
+            boolean anySource = artifact.sha256 != null && sources.size() > 1;
+            response = transport.send(resumableRequest(transport, uri, state, cached, anySource),
+                    BodyHandlers.ofInputStream());
+            if (response.statusCode() == 416 && state.canResume()) {
+                // El parcial ya no corresponde con el archivo remoto: pedirlo completo
+                closeQuietly(response);
+                state.validator = null;
+                response = transport.send(transport.get(uri).build(), BodyHandlers.ofInputStream());
+            }
+        } catch (IOException e) {
+            if (cached == null) {
+                state.discard();
+                throw e;
+            }
+            // Sin conexión: mejor una copia posiblemente antigua que nada
+            System.err.println("⚠ No se pudo revalidar " + urlString + " (" + (e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName()) + "), usando la copia en caché");
+            state.discard();
+            return serveFromCache(options.cache, cached, targetFor(targetDir, artifact, cached.fileName),
+                    artifact.isArchive(), task);
+        }
 
         try {
-            int status = conn.getResponseCode();
+            int status = response.statusCode();
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                System.out.println("✓ Copia en caché vigente para " + cached.fileName);
+                state.discard();
+                return serveFromCache(options.cache, cached, targetFor(targetDir, artifact, cached.fileName),
+                    artifact.isArchive(), task);
+            }
             if (status >= 400) {
-                throw new DownloadException("HTTP error " + status + " for url: " + urlString);
+                throw HttpStatusException.of(response, "HTTP error " + status + " for url: " + uri);
             }
 
-            long contentLength = conn.getContentLengthLong();
-            String fileName = extractFileName(conn, url);
-            Path tempFile = Files.createTempFile(targetDir, "dl-", ".part");
+            boolean resuming = state.canResume() && status == HttpURLConnection.HTTP_PARTIAL
+                    && contentRangeStart(response) == state.resumeOffset();
+            if (!resuming && status == HttpURLConnection.HTTP_PARTIAL) {
+                // Rango inesperado: se pide el archivo completo sin condiciones
+                closeQuietly(response);
+                response = transport.send(transport.get(uri).build(), BodyHandlers.ofInputStream());
+                status = response.statusCode();
+                if (status >= 400) {
+                    throw HttpStatusException.of(response, "HTTP error " + status + " for url: " + urlString);
+                }
+            }
+            long contentLength = resuming ? state.length : contentLength(response);
+            String fileName = extractFileName(response, uri);
+
+            // Fallar antes de leer el cuerpo si el servidor ya anuncia otro tamaño
+            if (artifact.size >= 0 && contentLength >= 0 && contentLength != artifact.size) {
+                state.delete();
+                Files.deleteIfExists(state.partFile);
+                throw new IntegrityException("Tamaño inesperado para " + fileName + ": el servidor anuncia "
+                        + contentLength + " bytes y la configuración declara " + artifact.size);
+            }
 
-            ProgressTracker progressTracker = null;
-            if (progressCallback != null) {
-                progressTracker = new ProgressTracker(progressCallback, fileName, contentLength);
-                progressCallback.onDownloadStart(fileName, contentLength);
+            if (task != null) {
+                task.start(fileName, contentLength);
             }
 
-            // REVERTIR A LA LÓGICA ORIGINAL DE TRANSFERENCIA QUE FUNCIONABA
-            try (InputStream inputStream = conn.getInputStream();
-                 ReadableByteChannel inputChannel = Channels.newChannel(inputStream);
-                 WritableByteChannel outputChannel = Files.newByteChannel(tempFile,
-                         StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            int segments;
+            if (resuming) {
+                System.out.println("Reanudando descarga de " + fileName + " desde "
+                        + formatBytes(state.bytesDone()) + " / " + formatBytes(contentLength));
+                if (task != null) {
+                    task.addReused(state.bytesDone());
+                }
+                segments = state.isSegmented() ? state.segments.size() : 1;
+            } else {
+                // El servidor no aceptó el rango (o no había nada que reanudar): empezar de cero
+                state.restart(validatorOf(response), contentLength);
+                segments = supportsRanges(response) ? SegmentedDownload.segmentsFor(contentLength, options) : 1;
+                if (segments > 1) {
+                    state.splitInto(segments);
+                    state.save();
+                }
+            }
 
-                transferOriginalMethod(inputChannel, outputChannel, progressTracker);
+            boolean downloaded = false;
+            String sha256 = null;
+
+            if (segments > 1) {
+                // Se usa la URL final tras las redirecciones para que cada rango no las repita
+                URI resolvedUri = response.uri();
+                closeQuietly(response);
+
+                // Sin hash no se puede comprobar que los rangos de otros espejos encajen
+                List<URI> segmentSources = new ArrayList<>(List.of(resolvedUri));
+                if (artifact.sha256 != null && options.mirrors != null) {
+                    for (URI mirror : options.mirrors.fastEnough(sources)) {
+                        if (!mirror.equals(uri)) {
+                            segmentSources.add(mirror);
+                        }
+                    }
+                }
+                // El hash se calcula durante la descarga; también ahorra a la caché volver a leer el archivo
+                MessageDigest digest = (artifact.sha256 != null || options.cache != null) ? DownloadCache.newSha256() : null;
+                SegmentedDownload segmented = new SegmentedDownload(segmentSources, state, transport,
+                        bytes -> { if (task != null) task.add(bytes); }, digest);
+                downloaded = segmented.run();
+
+                if (!downloaded) {
+                    System.err.println("⚠ El servidor ignoró Range, usando descarga de un solo flujo: " + urlString);
+                    if (task != null) {
+                        task.restart();
+                    }
+                    response = transport.send(transport.get(uri).build(), BodyHandlers.ofInputStream());
+                    int retryStatus = response.statusCode();
+                    if (retryStatus >= 400) {
+                        throw HttpStatusException.of(response, "HTTP error " + retryStatus + " for url: " + urlString);
+                    }
+                    state.restart(validatorOf(response), contentLength(response));
+                    resuming = false;
+                } else if (digest != null) {
+                    sha256 = DownloadCache.toHex(digest.digest());
+                }
             }
 
-            Path finalPath = targetDir.resolve(fileName);
-            Files.move(tempFile, finalPath,
-                    java.nio.file.StandardCopyOption.REPLACE_EXISTING,
-                    java.nio.file.StandardCopyOption.ATOMIC_MOVE);
+            if (!downloaded) {
+                // REVERTIR A LA LÓGICA ORIGINAL DE TRANSFERENCIA QUE FUNCIONABA
+                // Al reanudar se añade al final del parcial; si no, se sobrescribe
+                StandardOpenOption mode = resuming ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING;
+                // El hash se calcula en el mismo bucle de copia; también ahorra a la caché volver a leer el archivo
+                MessageDigest digest = (artifact.sha256 != null || options.cache != null) ? DownloadCache.newSha256() : null;
+                if (digest != null && resuming) {
+                    updateDigest(digest, state.partFile, state.resumeOffset());
+                }
+                InputStream inputStream = response.body();
+                HttpTransport.IdleGuard guard = transport.guard(inputStream);
+                try (guard;
+                     ReadableByteChannel inputChannel = Channels.newChannel(inputStream);
+                     WritableByteChannel outputChannel = Files.newByteChannel(state.partFile,
+                             StandardOpenOption.WRITE, mode)) {
+
+                    transferOriginalMethod(inputChannel, outputChannel, task, guard, digest, BUFFER_SIZE);
+                } catch (IOException e) {
+                    if (guard.isExpired()) {
+                        throw stalled(guard, urlString, e);
+                    }
+                    throw e;
+                }
+
+                // Un corte de conexión puede terminar el flujo sin error: comprobar que llegó todo
+                long received = Files.size(state.partFile);
+                long expected = state.length;
+                if (expected > 0 && received != expected) {
+                    throw new EOFException("Descarga incompleta: " + received + " de " + expected
+                            + " bytes para url: " + urlString);
+                }
+                if (digest != null) {
+                    sha256 = DownloadCache.toHex(digest.digest());
+                }
+            }
+
+            verify(artifact, fileName, state, sha256);
 
-            if (progressTracker != null) {
-                progressTracker.complete();
+            Path finalPath = targetFor(targetDir, artifact, fileName);
+            Files.createDirectories(finalPath.getParent());
+            Files.move(state.partFile, finalPath,
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            state.delete();
+
+            if (options.cache != null) {
+                try {
+                    options.cache.store(urlString, header(response, "ETag"), header(response, "Last-Modified"),
+                            finalPath, sha256, artifact.isArchive());
+                } catch (IOException e) {
+                    System.err.println("⚠ No se pudo guardar en caché " + fileName + ": " + e.getMessage());
+                }
+            }
+
+            if (task != null) {
+                task.complete();
             }
 
             return finalPath;
 
+        } catch (IntegrityException e) {
+            throw e;
+        } catch (IOException | DownloadException e) {
+            // Conservar lo recibido para el siguiente intento
+            state.saveQuietly();
+            throw e;
         } finally {
-            conn.disconnect();
+            closeQuietly(response);
         }
     }
 
-    // MÉTODO DE TRANSFERENCIA ORIGINAL QUE FUNCIONABA CORRECTAMENTE
-    private static void transferOriginalMethod(ReadableByteChannel input, WritableByteChannel output,
-                                               ProgressTracker progressTracker) throws IOException {
+    /**
+     * Entrega el cuerpo de la respuesta a {@code consumer} a medida que llega, sin esperar a
+     * tener el archivo completo en disco. Si hay caché, los bytes se copian a la vez en un parcial
+     * dentro de la propia caché, nunca junto a los archivos del juego; si no, el archivo nunca
+     * llega a escribirse entero. El hash declarado solo se puede comprobar al final, cuando {@code consumer} ya procesó
+     * los datos: una {@link IntegrityException} indica que hay que descartar lo que hizo.
+     */
+    public static void streamFrom(Artifact artifact, DownloadOptions options,
+                                  DownloadProgress.Task task, StreamConsumer consumer)
+            throws IOException, DownloadException {
+
+        String urlString = artifact.url;
+        // Aquí no hay marcha atrás a mitad del cuerpo: se usa el mejor espejo
+        URI uri = sourcesOf(artifact, options).get(0);
+        HttpTransport transport = options.transport();
+        HttpResponse<InputStream> response = transport.send(transport.get(uri).build(), BodyHandlers.ofInputStream());
+        Path teeDir = null;
+        Path teeFile = null;
+
+        try {
+            int status = response.statusCode();
+            if (status >= 400) {
+                throw HttpStatusException.of(response, "HTTP error " + status + " for url: " + urlString);
+            }
+
+            long contentLength = contentLength(response);
+            String fileName = extractFileName(response, uri);
+
+            if (task != null) {
+                task.start(fileName, contentLength);
+            }
+
+            if (artifact.size >= 0 && contentLength >= 0 && contentLength != artifact.size) {
+                throw new IntegrityException("Tamaño inesperado para " + fileName + ": el servidor anuncia "
+                        + contentLength + " bytes y la configuración declara " + artifact.size);
+            }
+
+            if (options.cache != null) {
+                // Con el nombre final ya puesto: la caché lo guarda como nombre del objeto
+                teeDir = options.cache.newTempDir();
+                teeFile = teeDir.resolve(fileName);
+            }
+
+            long received;
+            MessageDigest digest = (artifact.sha256 != null || teeFile != null) ? DownloadCache.newSha256() : null;
+            InputStream inputStream = response.body();
+            HttpTransport.IdleGuard guard = transport.guard(inputStream);
+            try (guard; StreamingBody body = new StreamingBody(inputStream, teeFile, task, guard, digest)) {
+                consumer.consume(fileName, body);
+                // Lo que quede tras la última entrada (directorio central) también cuenta para la caché
+                body.drain();
+                received = body.count;
+            } catch (IOException e) {
+                if (guard.isExpired()) {
+                    throw stalled(guard, urlString, e);
+                }
+                throw e;
+            }
+
+            if (contentLength > 0 && received != contentLength) {
+                throw new EOFException("Descarga incompleta: " + received + " de " + contentLength
+                        + " bytes para url: " + urlString);
+            }
+
+            String sha256 = digest != null ? DownloadCache.toHex(digest.digest()) : null;
+            if (artifact.size >= 0 && received != artifact.size) {
+                throw new IntegrityException("Tamaño incorrecto para " + fileName + ": " + received
+                        + " bytes, se esperaban " + artifact.size);
+            }
+            if (artifact.sha256 != null && !artifact.sha256.equals(sha256)) {
+                throw new IntegrityException("SHA-256 incorrecto para " + fileName + ": " + sha256
+                        + ", se esperaba " + artifact.sha256);
+            }
+
+            if (teeFile != null) {
+                try {
+                    options.cache.store(urlString, header(response, "ETag"), header(response, "Last-Modified"),
+                            teeFile, sha256, true);
+                } catch (IOException e) {
+                    System.err.println("⚠ No se pudo guardar en caché " + fileName + ": " + e.getMessage());
+                }
+            }
+
+            if (task != null) {
+                task.complete();
+            }
 
+        } finally {
+            closeQuietly(response);
+            if (teeFile != null) {
+                Files.deleteIfExists(teeFile);
+            }
+            if (teeDir != null) {
+                Files.deleteIfExists(teeDir);
+            }
+        }
+    }
+
+    /**
+     * Flujo de la respuesta que cuenta lo leído para el progreso y, opcionalmente, lo copia a un archivo.
+     */
+    private static final class StreamingBody extends FilterInputStream {
+        private final OutputStream tee;
+        private final DownloadProgress.Task task;
+        private final HttpTransport.IdleGuard guard;
+        private final MessageDigest digest;
+        long count;
+
+        StreamingBody(InputStream in, Path teeFile, DownloadProgress.Task task,
+                      HttpTransport.IdleGuard guard, MessageDigest digest) throws IOException {
+            super(new BufferedInputStream(in, BUFFER_SIZE));
+            this.tee = teeFile != null ? new BufferedOutputStream(Files.newOutputStream(teeFile), BUFFER_SIZE) : null;
+            this.task = task;
+            this.guard = guard;
+            this.digest = digest;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                if (tee != null) tee.write(b);
+                if (digest != null) digest.update((byte) b);
+                advance(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                if (tee != null) tee.write(b, off, n);
+                if (digest != null) digest.update(b, off, n);
+                advance(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Leer en lugar de saltar para que la copia y el progreso no pierdan bytes
+            byte[] buffer = new byte[(int) Math.min(n, BUFFER_SIZE)];
+            int read = read(buffer, 0, buffer.length);
+            return Math.max(read, 0);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        void drain() throws IOException {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (read(buffer, 0, buffer.length) != -1) {
+                // descartar
+            }
+        }
+
+        private void advance(int n) {
+            count += n;
+            guard.touch(n);
+            if (task != null) {
+                task.add(n);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (tee != null) tee.close();
+            }
+        }
+    }
+
+    private static Path serveOffline(Path targetDir, Artifact artifact, DownloadOptions options,
+                                     DownloadProgress.Task task) throws IOException, DownloadException {
+        DownloadCache.Entry cached = options.cache != null ? options.cache.lookup(artifact.url) : null;
+        if (cached == null) {
+            throw new DownloadException("Sin conexión y sin copia en caché para url: " + artifact.url);
+        }
+        if (artifact.sha256 != null && !artifact.sha256.equals(cached.sha256)) {
+            throw new IntegrityException("La copia en caché de " + cached.fileName
+                    + " no coincide con el SHA-256 de la configuración");
+        }
+        System.out.println("✓ Sin conexión, usando la copia en caché de " + cached.fileName);
+        return serveFromCache(options.cache, cached, targetFor(targetDir, artifact, cached.fileName),
+                    artifact.isArchive(), task);
+    }
+
+    // Solo un ZIP, que se extrae y se borra, puede compartir el objeto de la caché
+    private static Path serveFromCache(DownloadCache cache, DownloadCache.Entry cached, Path target, boolean link,
+                                       DownloadProgress.Task task) throws IOException {
+        if (task != null) {
+            task.start(cached.fileName, cached.size);
+        }
+        Files.createDirectories(target.getParent());
+        Path restored = cache.restoreTo(cached, target, link);
+        if (task != null) {
+            task.addReused(cached.size);
+            task.complete();
+        }
+        return restored;
+    }
+
+    // Los archivos sueltos van a su ruta; los ZIP, a la raíz con el nombre que da el servidor
+    private static Path targetFor(Path targetDir, Artifact artifact, String fileName) {
+        return artifact.path != null ? targetDir.resolve(artifact.path) : targetDir.resolve(fileName);
+    }
+
+    /**
+     * Petición que pide solo lo que falta cuando hay un parcial reanudable.
+     * If-Range hace que el servidor envíe el archivo completo si cambió desde entonces.
+     * Si en cambio hay una copia en caché, la petición es condicional y un 304 evita la descarga.
+     */
+    private static HttpRequest resumableRequest(HttpTransport transport, URI uri, ResumeState state,
+                                                DownloadCache.Entry cached, boolean anySource) {
+        HttpRequest.Builder request = transport.get(uri);
+        if (state.canResume()) {
+            request.header("Range", "bytes=" + state.resumeOffset() + "-");
+            if (!anySource) {
+                request.header("If-Range", state.validator);
+            }
+        } else if (cached != null) {
+            if (cached.etag != null) {
+                request.header("If-None-Match", cached.etag);
+            }
+            if (cached.lastModified != null) {
+                request.header("If-Modified-Since", cached.lastModified);
+            }
+        }
+        return request.build();
+    }
+
+    private static HttpTimeoutException stalled(HttpTransport.IdleGuard guard, String urlString, IOException cause) {
+        HttpTimeoutException stalled = new HttpTimeoutException(guard.reason() + " descargando " + urlString);
+        stalled.initCause(cause);
+        return stalled;
+    }
+
+    private static URI toUri(String urlString) throws DownloadException {
+        try {
+            return new URI(urlString);
+        } catch (URISyntaxException e) {
+            throw new DownloadException("URL inválida: " + urlString, e);
+        }
+    }
+
+    private static String header(HttpResponse<?> response, String name) {
+        return response.headers().firstValue(name).orElse(null);
+    }
+
+    private static long contentLength(HttpResponse<?> response) {
+        return response.headers().firstValueAsLong("Content-Length").orElse(-1L);
+    }
+
+    private static void closeQuietly(HttpResponse<InputStream> response) {
+        try {
+            response.body().close();
+        } catch (IOException e) {
+            // la respuesta ya no interesa
+        }
+    }
+
+    /**
+     * ETag fuerte o, si no hay, Last-Modified. Las ETag débiles no sirven para If-Range.
+     */
+    private static String validatorOf(HttpResponse<?> response) {
+        String etag = header(response, "ETag");
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
+        }
+        return header(response, "Last-Modified");
+    }
+
+    private static long contentRangeStart(HttpResponse<?> response) {
+        // Formato: "bytes inicio-fin/total"
+        String contentRange = header(response, "Content-Range");
+        if (contentRange == null || !contentRange.startsWith("bytes ")) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(contentRange.substring(6, contentRange.indexOf('-')).trim());
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    private static boolean supportsRanges(HttpResponse<?> response) {
+        String acceptRanges = header(response, "Accept-Ranges");
+        return acceptRanges != null && acceptRanges.trim().equalsIgnoreCase("bytes");
+    }
+
+    /**
+     * Compara el resultado con lo que declara la configuración. Si no coincide, el parcial se
+     * descarta por completo: reanudarlo solo repetiría los mismos bytes malos.
+     */
+    private static void verify(Artifact artifact, String fileName, ResumeState state, String sha256)
+            throws IOException, IntegrityException {
+        String problem = null;
+        long size = Files.size(state.partFile);
+        if (artifact.size >= 0 && size != artifact.size) {
+            problem = "Tamaño incorrecto para " + fileName + ": " + size + " bytes, se esperaban " + artifact.size;
+        } else if (artifact.sha256 != null && !artifact.sha256.equals(sha256)) {
+            problem = "SHA-256 incorrecto para " + fileName + ": " + sha256 + ", se esperaba " + artifact.sha256;
+        }
+        if (problem == null) {
+            if (artifact.sha256 != null) {
+                System.out.println("✓ SHA-256 verificado: " + fileName);
+            }
+            return;
+        }
+
+        state.delete();
+        Files.deleteIfExists(state.partFile);
+        throw new IntegrityException(problem);
+    }
+
+    // Solo al reanudar: el prefijo ya descargado no pasó por el bucle de copia de este intento
+    private static void updateDigest(MessageDigest digest, Path file, long length) throws IOException {
         ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long remaining = length;
+            while (remaining > 0) {
+                buffer.clear();
+                if (remaining < buffer.capacity()) {
+                    buffer.limit((int) remaining);
+                }
+                int read = channel.read(buffer);
+                if (read < 0) {
+                    break;
+                }
+                buffer.flip();
+                digest.update(buffer);
+                remaining -= read;
+            }
+        }
+    }
+
+    // MÉTODO DE TRANSFERENCIA ORIGINAL QUE FUNCIONABA CORRECTAMENTE
+    // Visible en el paquete para los benchmarks de src/jmh, que prueban otros tamaños de buffer
+    static void transferOriginalMethod(ReadableByteChannel input, WritableByteChannel output,
+                                       DownloadProgress.Task task,
+                                       HttpTransport.IdleGuard guard,
+                                       MessageDigest digest, int bufferSize) throws IOException {
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize);
 
         long totalBytesRead = 0;
         int bytesRead;
 
         while ((bytesRead = input.read(buffer)) != -1) {
             totalBytesRead += bytesRead;
+            guard.touch(bytesRead);
             buffer.flip();
 
+            if (digest != null) {
+                // update() consume el buffer: se vuelve a la posición inicial para escribir lo mismo
+                buffer.mark();
+                digest.update(buffer);
+                buffer.reset();
+            }
+
             while (buffer.hasRemaining()) {
                 output.write(buffer);
             }
 
             buffer.clear();
 
-            // REPORTAR PROGRESO SIN THROTTLING AGRESIVO - CADA CHUNK COMO ANTES
-            if (progressTracker != null) {
-                progressTracker.updateProgress(bytesRead);
+            // Solo suma en un contador; la interfaz lo lee a su ritmo
+            if (task != null) {
+                task.add(bytesRead);
             }
         }
     }
 
-    private static String extractFileName(HttpURLConnection conn, URL url) {
-        String contentDisposition = conn.getHeaderField("Content-Disposition");
+    private static String extractFileName(HttpResponse<?> response, URI uri) {
+        String contentDisposition = header(response, "Content-Disposition");
         if (contentDisposition != null) {
             String[] parts = contentDisposition.split(";");
             for (String part : parts) {
@@ -140,7 +828,7 @@ public final class DownloadManager {
             }
         }
 
-        String urlPath = url.getPath();
+        String urlPath = uri.getPath();
         if (urlPath != null && !urlPath.isEmpty()) {
             String fileName = Path.of(urlPath).getFileName().toString();
             if (!fileName.isEmpty() && !fileName.equals("/")) {
@@ -155,59 +843,6 @@ public final class DownloadManager {
         return fileName.replaceAll("[\\\\/:*?\"<>|]", "_").trim();
     }
 
-    // CLASE INTERNA SIMPLIFICADA PERO SIN THROTTLING AGRESIVO
-    private static class ProgressTracker {
-        private final ProgressCallback callback;
-        private final String fileName;
-        private final long totalBytes;
-        private long bytesDownloaded = 0;
-        private long startTime;
-        private long lastUpdateTime;
-        private double lastCalculatedSpeed = 0;
-
-        public ProgressTracker(ProgressCallback callback, String fileName, long totalBytes) {
-            this.callback = callback;
-            this.fileName = fileName;
-            this.totalBytes = totalBytes;
-            this.startTime = System.currentTimeMillis();
-            this.lastUpdateTime = startTime;
-        }
-
-        public void updateProgress(long additionalBytes) {
-            bytesDownloaded += additionalBytes;
-            long currentTime = System.currentTimeMillis();
-
-            // THROTTLING MÁS SUAVE - ACTUALIZAR CADA 100ms EN LUGAR DE 200ms
-            if (currentTime - lastUpdateTime >= 100) {
-                // CÁLCULO DE VELOCIDAD CORREGIDO
-                long totalTimeDiff = currentTime - startTime;
-
-                if (totalTimeDiff > 0) {
-                    double currentSpeed = (double) bytesDownloaded / (totalTimeDiff / 1000.0);
-
-                    // SUAVIZADO MENOS AGRESIVO
-                    if (lastCalculatedSpeed == 0) {
-                        lastCalculatedSpeed = currentSpeed;
-                    } else {
-                        lastCalculatedSpeed = (lastCalculatedSpeed * 0.8) + (currentSpeed * 0.2);
-                    }
-                }
-
-                if (callback != null) {
-                    callback.onProgress(bytesDownloaded, totalBytes, lastCalculatedSpeed, fileName);
-                }
-
-                lastUpdateTime = currentTime;
-            }
-        }
-
-        public void complete() {
-            if (callback != null) {
-                callback.onDownloadComplete(fileName);
-            }
-        }
-    }
-
     // Métodos de utilidad para formateo
     public static String formatBytes(long bytes) {
         if (bytes < 1024) return bytes + " B";
@@ -219,4 +854,11 @@ public final class DownloadManager {
     public static String formatSpeed(double bytesPerSecond) {
         return formatBytes((long) bytesPerSecond) + "/s";
     }
+
+    public static String formatDuration(long seconds) {
+        if (seconds < 0) return "--";
+        if (seconds < 60) return seconds + "s";
+        if (seconds < 3600) return String.format("%dm %02ds", seconds / 60, seconds % 60);
+        return String.format("%dh %02dm", seconds / 3600, seconds % 3600 / 60);
+    }
 }
\ No newline at end of file
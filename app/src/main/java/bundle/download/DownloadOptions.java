@@ -0,0 +1,151 @@
+package bundle.download;
+
+import bundle.net.HttpTransport;
+
+public final class DownloadOptions {
+    public static final DownloadOptions DEFAULT = new Builder().build();
+
+    public final int segments;
+    public final long minSegmentSize;
+    public final boolean resume;
+    public final DownloadCache cache;
+    public final int concurrency;
+    public final int perHost;
+    public final boolean offline;
+    public final RetryPolicy retry;
+    public final MirrorRanking mirrors;
+    private final HttpTransport transport;
+
+    private DownloadOptions(Builder builder) {
+        this.segments = builder.segments;
+        this.minSegmentSize = builder.minSegmentSize;
+        this.resume = builder.resume;
+        this.cache = builder.cache;
+        this.concurrency = builder.concurrency;
+        this.perHost = builder.perHost;
+        this.offline = builder.offline;
+        this.retry = builder.retry;
+        this.mirrors = builder.mirrors;
+        this.transport = builder.transport;
+    }
+
+    /**
+     * Transporte configurado o, si no se indicó, el compartido en el momento de la descarga.
+     */
+    public HttpTransport transport() {
+        return transport != null ? transport : HttpTransport.shared();
+    }
+
+    @Override
+    public String toString() {
+        return "DownloadOptions{" +
+                "segments=" + segments +
+                ", minSegmentSize=" + minSegmentSize +
+                ", resume=" + resume +
+                ", cache=" + (cache != null) +
+                ", concurrency=" + concurrency +
+                ", perHost=" + perHost +
+                ", offline=" + offline +
+                ", retries=" + (retry.maxAttempts - 1) +
+                ", mirrors=" + (mirrors != null) +
+                '}';
+    }
+
+    public static class Builder {
+        private int segments = 4;
+        private long minSegmentSize = 8L * 1024 * 1024;
+        private boolean resume = true;
+        private DownloadCache cache;
+        private int concurrency = 4;
+        private int perHost = 2;
+        private boolean offline;
+        private RetryPolicy retry = RetryPolicy.DEFAULT;
+        private MirrorRanking mirrors;
+        private HttpTransport transport;
+
+        /**
+         * Número máximo de conexiones simultáneas por archivo. Con 1 se usa siempre la descarga de un solo flujo.
+         */
+        public Builder segments(int segments) {
+            this.segments = Math.max(1, segments);
+            return this;
+        }
+
+        /**
+         * Tamaño mínimo de cada rango, para no abrir conexiones extra en archivos pequeños.
+         */
+        public Builder minSegmentSize(long minSegmentSize) {
+            this.minSegmentSize = Math.max(1, minSegmentSize);
+            return this;
+        }
+
+        /**
+         * Conserva los parciales entre intentos y los continúa con Range/If-Range.
+         */
+        public Builder resume(boolean resume) {
+            this.resume = resume;
+            return this;
+        }
+
+        /**
+         * Caché local de descargas; null la desactiva.
+         */
+        public Builder cache(DownloadCache cache) {
+            this.cache = cache;
+            return this;
+        }
+
+        /**
+         * Archivos de un mismo modpack que se descargan a la vez.
+         */
+        public Builder concurrency(int concurrency) {
+            this.concurrency = Math.max(1, concurrency);
+            return this;
+        }
+
+        /**
+         * Descargas simultáneas como máximo contra un mismo servidor, para repartir el ancho de banda entre orígenes.
+         */
+        public Builder perHost(int perHost) {
+            this.perHost = Math.max(1, perHost);
+            return this;
+        }
+
+        /**
+         * Sin red: todo sale de la caché, sin revalidar, y lo que no esté en ella es un error.
+         */
+        public Builder offline(boolean offline) {
+            this.offline = offline;
+            return this;
+        }
+
+        /**
+         * Reintentos ante fallos pasajeros; {@link RetryPolicy#NONE} falla al primer error.
+         */
+        public Builder retry(RetryPolicy retry) {
+            this.retry = retry != null ? retry : RetryPolicy.NONE;
+            return this;
+        }
+
+        /**
+         * Mide los espejos y empieza por el mejor; null los usa en el orden de la configuración,
+         * solo para cambiar de uno a otro cuando fallan.
+         */
+        public Builder mirrors(MirrorRanking mirrors) {
+            this.mirrors = mirrors;
+            return this;
+        }
+
+        /**
+         * Transporte HTTP para las descargas; null usa {@link HttpTransport#shared()}.
+         */
+        public Builder transport(HttpTransport transport) {
+            this.transport = transport;
+            return this;
+        }
+
+        public DownloadOptions build() {
+            return new DownloadOptions(this);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package bundle.download;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Progreso de una instalación, compartido por todos los hilos de descarga y extracción.
+ * Los hilos solo suman en contadores {@link LongAdder}: sin bloqueos, sin crear objetos
+ * por bloque leído y sin tocar Swing. Quien lo muestra lo lee con {@link #sample()} a su
+ * propio ritmo, normalmente un temporizador de la interfaz.
+ */
+public final class DownloadProgress {
+
+    public enum Phase { PREPARE, DOWNLOAD, EXTRACT, DONE }
+
+    // Ventana del ritmo instantáneo; caben de sobra las muestras de la interfaz a 15 fps
+    private static final int RATE_WINDOW_SECONDS = 3;
+    private static final int RATE_SAMPLES = 128;
+
+    private final String label;
+    private final LongAdder bytesDone = new LongAdder();
+    // Parte de bytesDone que no vino de la red: copias de la caché y parciales reanudados
+    private final LongAdder bytesReused = new LongAdder();
+    private final LongAdder bytesTotal = new LongAdder();
+    private final LongAdder filesDone = new LongAdder();
+    private final LongAdder filesTotal = new LongAdder();
+    private final LongAdder entriesDone = new LongAdder();
+    private final LongAdder entriesTotal = new LongAdder();
+    private volatile String current;
+    private volatile Phase phase = Phase.PREPARE;
+
+    // Estado del muestreo: solo lo toca el hilo que llama a sample()
+    private final RateEstimator bytesRate = new RateEstimator(RATE_WINDOW_SECONDS, TimeUnit.SECONDS, RATE_SAMPLES);
+    private final RateEstimator entriesRate = new RateEstimator(RATE_WINDOW_SECONDS, TimeUnit.SECONDS, RATE_SAMPLES);
+
+    public DownloadProgress(String label) {
+        this.label = label;
+    }
+
+    /**
+     * Una descarga más; {@code expectedBytes} es el tamaño declarado o -1 si aún no se sabe.
+     */
+    public Task task(long expectedBytes) {
+        filesTotal.increment();
+        if (expectedBytes >= 0) {
+            bytesTotal.add(expectedBytes);
+        }
+        return new Task(expectedBytes);
+    }
+
+    /**
+     * Empieza la extracción de {@code entries} entradas más.
+     */
+    public void extracting(int entries) {
+        entriesTotal.add(entries);
+        phase = Phase.EXTRACT;
+    }
+
+    public void entryExtracted() {
+        entriesDone.increment();
+    }
+
+    public void phase(Phase phase) {
+        this.phase = phase;
+    }
+
+    public long bytesDone() {
+        return bytesDone.sum();
+    }
+
+    /**
+     * Bytes recibidos de la red en esta ejecución, sin lo servido desde la caché ni lo reanudado.
+     */
+    public long bytesDownloaded() {
+        return bytesDone.sum() - bytesReused.sum();
+    }
+
+    public long entriesDone() {
+        return entriesDone.sum();
+    }
+
+    /**
+     * Lee los contadores y actualiza los ritmos con esta muestra. Pensado para un único hilo
+     * que muestrea a intervalos fijos; el ritmo y la ETA son los de la fase actual
+     * (bytes/s al descargar, archivos/s al extraer).
+     */
+    public Snapshot sample() {
+        long now = System.nanoTime();
+        Phase phase = this.phase;
+        long bytes = bytesDone.sum();
+        long bytesExpected = bytesTotal.sum();
+        long entries = entriesDone.sum();
+        long entriesExpected = entriesTotal.sum();
+        bytesRate.record(now, bytes);
+        entriesRate.record(now, entries);
+
+        RateEstimator rate = phase == Phase.EXTRACT ? entriesRate : bytesRate;
+        long eta = phase == Phase.EXTRACT ? rate.etaSeconds(entriesExpected)
+                : phase == Phase.DOWNLOAD ? rate.etaSeconds(bytesExpected)
+                : -1;
+        return new Snapshot(phase, label, current, bytes, bytesExpected, filesDone.sum(), filesTotal.sum(),
+                entries, entriesExpected, rate.rate(), rate.averageRate(), eta);
+    }
+
+    /**
+     * Una descarga concreta. Puede recibir bytes desde varios hilos (descarga segmentada).
+     */
+    public final class Task {
+        private final LongAdder done = new LongAdder();
+        private final LongAdder reused = new LongAdder();
+        private volatile long length;
+        private volatile boolean completed;
+
+        private Task(long expectedBytes) {
+            this.length = expectedBytes;
+        }
+
+        /**
+         * El servidor ya respondió: nombre definitivo y tamaño si antes no se conocía.
+         */
+        public void start(String fileName, long totalBytes) {
+            current = fileName;
+            phase = Phase.DOWNLOAD;
+            if (length < 0 && totalBytes >= 0) {
+                length = totalBytes;
+                bytesTotal.add(totalBytes);
+            }
+        }
+
+        public void add(long bytes) {
+            done.add(bytes);
+            bytesDone.add(bytes);
+        }
+
+        /**
+         * Bytes que cuentan para el progreso pero no se descargaron ahora (caché o parcial anterior).
+         */
+        public void addReused(long bytes) {
+            add(bytes);
+            reused.add(bytes);
+            bytesReused.add(bytes);
+        }
+
+        /**
+         * La descarga vuelve a empezar desde cero: se descuenta lo que ya había sumado.
+         */
+        public void restart() {
+            bytesDone.add(-done.sumThenReset());
+            bytesReused.add(-reused.sumThenReset());
+        }
+
+        public void complete() {
+            completed = true;
+            filesDone.increment();
+        }
+
+        /**
+         * La tarea se abandona y otra descarga ocupará su lugar: se deshace todo lo que sumó.
+         */
+        public void discard() {
+            restart();
+            filesTotal.decrement();
+            if (length >= 0) {
+                bytesTotal.add(-length);
+            }
+            if (completed) {
+                filesDone.decrement();
+            }
+        }
+    }
+
+    public static final class Snapshot {
+        public final Phase phase;
+        public final String label;
+        public final String current;
+        public final long bytesDone;
+        public final long bytesTotal;
+        public final long filesDone;
+        public final long filesTotal;
+        public final long entriesDone;
+        public final long entriesTotal;
+        // Unidades por segundo de la fase actual: en la ventana reciente y desde que empezó
+        public final double rate;
+        public final double averageRate;
+        // -1 si no se puede estimar (sin tamaño total o sin avance en la ventana)
+        public final long etaSeconds;
+
+        Snapshot(Phase phase, String label, String current, long bytesDone, long bytesTotal, long filesDone,
+                 long filesTotal, long entriesDone, long entriesTotal, double rate, double averageRate,
+                 long etaSeconds) {
+            this.phase = phase;
+            this.label = label;
+            this.current = current;
+            this.bytesDone = bytesDone;
+            this.bytesTotal = bytesTotal;
+            this.filesDone = filesDone;
+            this.filesTotal = filesTotal;
+            this.entriesDone = entriesDone;
+            this.entriesTotal = entriesTotal;
+            this.rate = rate;
+            this.averageRate = averageRate;
+            this.etaSeconds = etaSeconds;
+        }
+
+        /**
+         * Porcentaje de la fase actual, de 0 a 100.
+         */
+        public int percent() {
+            long done = phase == Phase.EXTRACT ? entriesDone : bytesDone;
+            long total = phase == Phase.EXTRACT ? entriesTotal : bytesTotal;
+            if (phase == Phase.DONE) {
+                return 100;
+            }
+            return total > 0 ? (int) Math.min(100, done * 100 / total) : 0;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package bundle.download;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Reparte trabajos entre hilos con dos límites: total y por servidor. Los servidores se
+ * atienden por turnos, así que uno con muchos archivos no acapara los hilos mientras
+ * los de otro esperan.
+ */
+final class DownloadScheduler<T> {
+
+    private final int concurrency;
+    private final int perHost;
+    private final Map<String, Deque<T>> queues = new LinkedHashMap<>();
+    private final Map<String, Integer> active = new HashMap<>();
+    private final List<String> hosts = new ArrayList<>();
+    private int cursor;
+    private int remaining;
+
+    DownloadScheduler(int concurrency, int perHost) {
+        this.concurrency = Math.max(1, concurrency);
+        this.perHost = Math.max(1, perHost);
+    }
+
+    synchronized void add(String host, T item) {
+        queues.computeIfAbsent(host, h -> {
+            hosts.add(h);
+            return new ArrayDeque<>();
+        }).add(item);
+        remaining++;
+    }
+
+    /**
+     * Ejecuta {@code job} para cada elemento y espera a que terminen todos. Los errores
+     * son cosa de {@code job}, que debe anotarlos todos: lo que se le escape aquí solo se
+     * registra, para que el hilo siga con los demás elementos.
+     */
+    void run(Consumer<T> job) throws InterruptedException {
+        int workers;
+        synchronized (this) {
+            workers = Math.min(concurrency, remaining);
+        }
+
+        List<Thread> threads = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            Thread thread = new Thread(() -> work(job), "download-" + (i + 1));
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+            throw e;
+        }
+    }
+
+    private void work(Consumer<T> job) {
+        Map.Entry<String, T> next;
+        while ((next = take()) != null) {
+            try {
+                job.accept(next.getValue());
+            } catch (RuntimeException e) {
+                System.err.println("✗ Error inesperado en descarga: " + e);
+            } finally {
+                release(next.getKey());
+            }
+        }
+    }
+
+    private synchronized Map.Entry<String, T> take() {
+        while (remaining > 0) {
+            for (int i = 0; i < hosts.size(); i++) {
+                int index = (cursor + i) % hosts.size();
+                String host = hosts.get(index);
+                Deque<T> queue = queues.get(host);
+                if (!queue.isEmpty() && active.getOrDefault(host, 0) < perHost) {
+                    // El siguiente turno empieza por el servidor que viene después
+                    cursor = index + 1;
+                    remaining--;
+                    active.merge(host, 1, Integer::sum);
+                    return Map.entry(host, queue.poll());
+                }
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private synchronized void release(String host) {
+        active.merge(host, -1, Integer::sum);
+        notifyAll();
+    }
+}
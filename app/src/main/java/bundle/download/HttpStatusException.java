@@ -0,0 +1,49 @@
+package bundle.download;
+
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * El servidor respondió con un código de error. Guarda el código y, si lo envió, el
+ * {@code Retry-After} para que {@link RetryPolicy} decida si y cuándo reintentar.
+ */
+public class HttpStatusException extends DownloadException {
+    public final int status;
+    // null si el servidor no indicó cuánto esperar
+    public final Duration retryAfter;
+
+    public HttpStatusException(int status, String message, Duration retryAfter) {
+        super(message);
+        this.status = status;
+        this.retryAfter = retryAfter;
+    }
+
+    static HttpStatusException of(HttpResponse<?> response, String message) {
+        return new HttpStatusException(response.statusCode(), message,
+                parseRetryAfter(response.headers().firstValue("Retry-After").orElse(null)));
+    }
+
+    /**
+     * {@code Retry-After} en segundos o como fecha HTTP; null si falta o no se entiende.
+     */
+    static Duration parseRetryAfter(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(value.trim())));
+        } catch (NumberFormatException e) {
+            // No son segundos: probar como fecha
+        }
+        try {
+            Duration wait = Duration.between(ZonedDateTime.now(),
+                    ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME));
+            return wait.isNegative() ? Duration.ZERO : wait;
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
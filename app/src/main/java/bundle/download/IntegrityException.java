@@ -0,0 +1,11 @@
+package bundle.download;
+
+/**
+ * El archivo descargado no coincide con el tamaño o el SHA-256 que declara la configuración.
+ * El parcial ya se ha descartado, así que un nuevo intento empieza desde cero.
+ */
+public class IntegrityException extends DownloadException {
+    public IntegrityException(String message) {
+        super(message);
+    }
+}
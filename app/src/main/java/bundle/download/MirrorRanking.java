@@ -0,0 +1,283 @@
+package bundle.download;
+
+import bundle.net.HttpTransport;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Elige entre las URL de un artefacto con espejos. A cada servidor sin nota reciente se le pide
+ * un rango pequeño del archivo y se anotan la latencia hasta las cabeceras y el ritmo del cuerpo;
+ * los espejos se ordenan por lo que tardarían en servir un archivo típico. Las notas son por
+ * servidor, se guardan en {@code mirrors.json} y se reutilizan en las siguientes ejecuciones.
+ * Un fallo durante la descarga penaliza al servidor hasta que se vuelva a medir.
+ * <p>
+ * De la prueba nunca se leen más de {@code PROBE_BYTES}: un servidor que ignora {@code Range} y
+ * responde 200 con el archivo entero se corta ahí, y queda marcado para no recibir rangos.
+ */
+public final class MirrorRanking {
+
+    static final String FILE_NAME = "mirrors.json";
+    private static final Gson GSON = new Gson();
+
+    private static final int PROBE_BYTES = 256 * 1024;
+    private static final Duration PROBE_TIMEOUT = Duration.ofSeconds(5);
+    // Una nota vale durante este tiempo; después se vuelve a medir
+    private static final Duration MAX_AGE = Duration.ofHours(6);
+    // Tamaño con el que se compara: pesa más el ritmo que la latencia
+    private static final long REFERENCE_BYTES = 8L * 1024 * 1024;
+    // Un espejo recibe rangos si no es más del doble de lento que el mejor
+    private static final double SPREAD_FACTOR = 2.0;
+
+    private final Path file;
+    private final Map<String, Score> scores = new ConcurrentHashMap<>();
+    // Mediciones en curso, para no medir dos veces el mismo servidor a la vez
+    private final Map<String, CompletableFuture<Score>> probing = new ConcurrentHashMap<>();
+
+    static final class Score {
+        double latencyMillis;
+        double bytesPerSecond;
+        int failures;
+        long measuredAt;
+        // Respondió 200 a la prueba con Range: sirve archivos enteros, pero no rangos
+        boolean noRanges;
+
+        // Segundos estimados para REFERENCE_BYTES; cada fallo reciente lo duplica
+        double cost() {
+            if (bytesPerSecond <= 0) {
+                return Double.MAX_VALUE;
+            }
+            double seconds = latencyMillis / 1000 + REFERENCE_BYTES / bytesPerSecond;
+            return seconds * (1 << Math.min(failures, 10));
+        }
+    }
+
+    /**
+     * Sin archivo las notas solo duran mientras se ejecuta el instalador.
+     */
+    public MirrorRanking(Path installerDir) {
+        this.file = installerDir != null ? installerDir.resolve(FILE_NAME) : null;
+        load();
+    }
+
+    /**
+     * Las URL ordenadas de mejor a peor. Con una sola URL no se mide nada.
+     */
+    List<URI> rank(List<URI> sources, HttpTransport transport) {
+        if (sources.size() < 2) {
+            return sources;
+        }
+        List<CompletableFuture<Score>> measured = new ArrayList<>();
+        for (URI source : sources) {
+            measured.add(scoreOf(source, transport));
+        }
+        CompletableFuture.allOf(measured.toArray(new CompletableFuture<?>[0])).join();
+
+        List<URI> ranked = new ArrayList<>(sources);
+        // La lista declarada decide los empates, así la URL principal gana si no hay diferencia
+        ranked.sort(Comparator.comparingDouble(source -> measured.get(sources.indexOf(source)).join().cost()));
+        if (!ranked.get(0).equals(sources.get(0))) {
+            System.out.println("Espejo elegido para " + fileName(sources.get(0)) + ": " + ranked.get(0).getAuthority());
+        }
+        return ranked;
+    }
+
+    /**
+     * De una lista ya ordenada, los espejos que merecen rangos de una descarga segmentada.
+     * La primera siempre está: su respuesta ya dijo si acepta rangos.
+     */
+    List<URI> fastEnough(List<URI> ranked) {
+        if (ranked.size() < 2) {
+            return ranked;
+        }
+        double best = score(ranked.get(0)).cost();
+        List<URI> usable = new ArrayList<>();
+        for (URI source : ranked) {
+            Score score = score(source);
+            if (usable.isEmpty() || (!score.noRanges && score.cost() <= best * SPREAD_FACTOR)) {
+                usable.add(source);
+            }
+        }
+        return usable;
+    }
+
+    /**
+     * Un fallo durante la descarga: el servidor baja en la lista hasta la próxima medición.
+     */
+    void recordFailure(URI source) {
+        Score score = scores.computeIfAbsent(hostOf(source), host -> new Score());
+        synchronized (score) {
+            score.failures++;
+        }
+        save();
+    }
+
+    private Score score(URI source) {
+        Score score = scores.get(hostOf(source));
+        return score != null ? score : new Score();
+    }
+
+    private CompletableFuture<Score> scoreOf(URI source, HttpTransport transport) {
+        String host = hostOf(source);
+        Score known = scores.get(host);
+        if (known != null && known.failures == 0
+                && System.currentTimeMillis() - known.measuredAt < MAX_AGE.toMillis()) {
+            return CompletableFuture.completedFuture(known);
+        }
+        CompletableFuture<Score> done = new CompletableFuture<>();
+        CompletableFuture<Score> running = probing.putIfAbsent(host, done);
+        if (running != null) {
+            return running;
+        }
+        probe(source, transport).whenComplete((score, error) -> {
+            scores.put(host, score);
+            probing.remove(host, done);
+            save();
+            done.complete(score);
+        });
+        return done;
+    }
+
+    private static CompletableFuture<Score> probe(URI source, HttpTransport transport) {
+        long start = System.nanoTime();
+        long[] headersAt = new long[1];
+        return transport.sendAsync(transport.get(source)
+                        .version(HttpClient.Version.HTTP_1_1)
+                        .header("Range", "bytes=0-" + (PROBE_BYTES - 1))
+                        .timeout(PROBE_TIMEOUT)
+                        .build(),
+                info -> {
+                    headersAt[0] = System.nanoTime();
+                    return new ProbeBody(PROBE_BYTES);
+                })
+                .orTimeout(PROBE_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)
+                .handle((response, error) -> {
+                    Score score = new Score();
+                    score.measuredAt = System.currentTimeMillis();
+                    if (error != null || response.statusCode() >= 400) {
+                        // Sin ritmo: queda la última de la lista
+                        score.failures = 1;
+                        return score;
+                    }
+                    long end = System.nanoTime();
+                    score.latencyMillis = (headersAt[0] - start) / 1e6;
+                    score.noRanges = response.statusCode() != HttpURLConnection.HTTP_PARTIAL;
+                    // Un cuerpo muy corto se descarga casi entero en la latencia; al menos 1 ms
+                    double bodySeconds = Math.max(1e-3, (end - headersAt[0]) / 1e9);
+                    score.bytesPerSecond = response.body() / bodySeconds;
+                    return score;
+                });
+    }
+
+    /**
+     * Cuenta los bytes del cuerpo sin guardarlos y corta la respuesta al llegar a {@code limit}.
+     */
+    private static final class ProbeBody implements HttpResponse.BodySubscriber<Long> {
+        private final long limit;
+        private final CompletableFuture<Long> result = new CompletableFuture<>();
+        private Flow.Subscription subscription;
+        private long count;
+
+        ProbeBody(long limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public CompletionStage<Long> getBody() {
+            return result;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> buffers) {
+            for (ByteBuffer buffer : buffers) {
+                count += buffer.remaining();
+            }
+            if (count >= limit) {
+                subscription.cancel();
+                result.complete(count);
+            } else {
+                subscription.request(1);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            result.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            result.complete(count);
+        }
+    }
+
+    private void load() {
+        if (file == null || !Files.exists(file)) {
+            return;
+        }
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            Map<String, Score> saved = GSON.fromJson(reader, new TypeToken<Map<String, Score>>() { }.getType());
+            if (saved != null) {
+                scores.putAll(saved);
+            }
+        } catch (IOException | JsonParseException e) {
+            System.err.println("⚠ Notas de espejos ilegibles, se volverán a medir: " + e.getMessage());
+        }
+    }
+
+    private synchronized void save() {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(file.getParent());
+            Path tmp = file.resolveSibling(FILE_NAME + ".tmp");
+            try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                GSON.toJson(scores, writer);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("⚠ No se pudieron guardar las notas de espejos: " + e.getMessage());
+        }
+    }
+
+    private static String hostOf(URI source) {
+        String host = source.getHost() != null ? source.getHost().toLowerCase(Locale.ROOT) : "";
+        return source.getPort() >= 0 ? host + ":" + source.getPort() : host;
+    }
+
+    private static String fileName(URI source) {
+        String path = source.getPath();
+        return path != null && path.contains("/") ? path.substring(path.lastIndexOf('/') + 1) : String.valueOf(source);
+    }
+}
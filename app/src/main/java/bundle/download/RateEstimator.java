@@ -0,0 +1,101 @@
+package bundle.download;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ritmo de un contador creciente a partir de muestras periódicas. Guarda las últimas en un
+ * buffer circular de tamaño fijo: el ritmo instantáneo sale de la ventana reciente (reacciona
+ * a cortes y ráfagas) y la media, de todo lo transcurrido desde que el contador empezó a moverse.
+ * No crea objetos al registrar; no es seguro entre hilos, lo usa solo quien muestrea.
+ */
+final class RateEstimator {
+
+    private final long windowNanos;
+    private final long[] times;
+    private final long[] values;
+    private int head;
+    private int size;
+
+    // Primera muestra en la que el contador ya se movía
+    private long startTime;
+    private long startValue;
+    private boolean started;
+
+    RateEstimator(long window, TimeUnit unit, int capacity) {
+        this.windowNanos = unit.toNanos(window);
+        this.times = new long[capacity];
+        this.values = new long[capacity];
+    }
+
+    /**
+     * Anota el valor del contador en el instante {@code now} de {@link System#nanoTime()}.
+     */
+    void record(long now, long value) {
+        if (!started) {
+            // Mientras no cambia, el inicio avanza: la espera previa no cuenta en la media
+            if (size > 0 && value != startValue) {
+                started = true;
+            } else {
+                startTime = now;
+                startValue = value;
+            }
+        }
+        head = (head + 1) % times.length;
+        times[head] = now;
+        values[head] = value;
+        size = Math.min(size + 1, times.length);
+    }
+
+    /**
+     * Unidades por segundo dentro de la ventana; 0 si no hay dos muestras.
+     */
+    double rate() {
+        if (size < 2) {
+            return 0;
+        }
+        long now = times[head];
+        int oldest = head;
+        // La muestra más antigua que aún cae dentro de la ventana
+        for (int i = 1; i < size; i++) {
+            int index = Math.floorMod(head - i, times.length);
+            if (now - times[index] > windowNanos) {
+                break;
+            }
+            oldest = index;
+        }
+        if (oldest == head) {
+            // Muestras más espaciadas que la ventana: usar la anterior
+            oldest = Math.floorMod(head - 1, times.length);
+        }
+        return perSecond(values[head] - values[oldest], now - times[oldest]);
+    }
+
+    /**
+     * Unidades por segundo desde que el contador empezó a moverse.
+     */
+    double averageRate() {
+        if (!started || size == 0) {
+            return 0;
+        }
+        return perSecond(values[head] - startValue, times[head] - startTime);
+    }
+
+    /**
+     * Segundos hasta llegar a {@code total} al ritmo actual; -1 si no se puede estimar.
+     */
+    long etaSeconds(long total) {
+        if (size == 0 || total <= 0) {
+            return -1;
+        }
+        long remaining = total - values[head];
+        if (remaining <= 0) {
+            return 0;
+        }
+        double rate = rate();
+        return rate > 0 ? (long) Math.ceil(remaining / rate) : -1;
+    }
+
+    private static double perSecond(long delta, long nanos) {
+        return nanos > 0 ? Math.max(0, delta) / (nanos / 1e9) : 0;
+    }
+}
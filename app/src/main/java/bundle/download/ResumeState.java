@@ -0,0 +1,258 @@
+package bundle.download;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Estado de una descarga reanudable: un archivo parcial con nombre determinista por URL
+ * y un archivo auxiliar (.meta) con el validador del servidor y lo ya recibido.
+ */
+final class ResumeState {
+
+    static final String PART_PREFIX = "dl-";
+    static final String PART_SUFFIX = ".part";
+    static final String META_SUFFIX = ".part.meta";
+
+    private static final long SAVE_INTERVAL_MS = 1000;
+
+    final String url;
+    final Path partFile;
+    final Path metaFile;
+    private final boolean persistent;
+    String validator;
+    long length = -1;
+    final List<Segment> segments = new ArrayList<>();
+    private long lastSave;
+
+    private ResumeState(String url, Path partFile, Path metaFile, boolean persistent) {
+        this.url = url;
+        this.partFile = partFile;
+        this.metaFile = metaFile;
+        this.persistent = persistent;
+    }
+
+    static final class Segment {
+        final long start;
+        final long end;
+        volatile long position;
+
+        Segment(long start, long end, long position) {
+            this.start = start;
+            this.end = end;
+            this.position = position;
+        }
+
+        boolean isComplete() {
+            return position > end;
+        }
+    }
+
+    /**
+     * Carga el estado guardado para la URL, o uno vacío si no existe o no corresponde.
+     */
+    static ResumeState load(Path targetDir, String url) {
+        String key = hashUrl(url);
+        ResumeState state = new ResumeState(url,
+                targetDir.resolve(PART_PREFIX + key + PART_SUFFIX),
+                targetDir.resolve(PART_PREFIX + key + META_SUFFIX), true);
+
+        if (!Files.exists(state.metaFile) || !Files.exists(state.partFile)) {
+            return state;
+        }
+
+        Properties props = new Properties();
+        try (InputStream in = Files.newInputStream(state.metaFile)) {
+            props.load(in);
+        } catch (IOException e) {
+            System.err.println("No se pudo leer el estado de reanudación: " + state.metaFile + " -> " + e.getMessage());
+            return state;
+        }
+
+        if (!url.equals(props.getProperty("url"))) {
+            return state;
+        }
+
+        state.validator = props.getProperty("validator");
+
+        String segmentList = props.getProperty("segments", "");
+        try {
+            state.length = Long.parseLong(props.getProperty("length", "-1"));
+            for (String segment : segmentList.split(",")) {
+                if (segment.isEmpty()) continue;
+                String[] range = segment.split("[-@]");
+                state.segments.add(new Segment(Long.parseLong(range[0]), Long.parseLong(range[1]), Long.parseLong(range[2])));
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Estado de reanudación corrupto, se descarta: " + state.metaFile);
+            state.validator = null;
+            state.length = -1;
+            state.segments.clear();
+        }
+        return state;
+    }
+
+    /**
+     * Estado sin persistencia sobre un parcial aleatorio, para cuando la reanudación está desactivada.
+     */
+    static ResumeState temporary(Path targetDir, String url) throws IOException {
+        Path partFile = Files.createTempFile(targetDir, PART_PREFIX, PART_SUFFIX);
+        return new ResumeState(url, partFile, null, false);
+    }
+
+    /**
+     * Indica si hay datos previos que se puedan pedir con If-Range.
+     */
+    boolean canResume() {
+        return validator != null && length > 0 && resumeOffset() > 0;
+    }
+
+    boolean isSegmented() {
+        return !segments.isEmpty();
+    }
+
+    /**
+     * Para descargas de un solo flujo, los bytes ya escritos coinciden con el tamaño del parcial.
+     * Para las segmentadas se pide desde el primer byte que falte.
+     */
+    long resumeOffset() {
+        if (isSegmented()) {
+            long offset = length;
+            for (Segment segment : segments) {
+                if (!segment.isComplete()) {
+                    offset = Math.min(offset, segment.position);
+                }
+            }
+            return offset;
+        }
+        try {
+            return Files.exists(partFile) ? Files.size(partFile) : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    long bytesDone() {
+        if (!isSegmented()) {
+            return resumeOffset();
+        }
+        long done = 0;
+        for (Segment segment : segments) {
+            done += segment.position - segment.start;
+        }
+        return done;
+    }
+
+    /**
+     * Descarta lo recibido y empieza de nuevo con el validador y tamaño indicados.
+     */
+    void restart(String validator, long length) throws IOException {
+        this.validator = validator;
+        this.length = length;
+        this.segments.clear();
+        Files.deleteIfExists(partFile);
+        Files.createFile(partFile);
+        save();
+    }
+
+    void splitInto(int count) {
+        segments.clear();
+        long segmentSize = length / count;
+        for (int i = 0; i < count; i++) {
+            long start = i * segmentSize;
+            long end = (i == count - 1) ? length - 1 : start + segmentSize - 1;
+            segments.add(new Segment(start, end, start));
+        }
+    }
+
+    synchronized void saveIfDue() {
+        long now = System.currentTimeMillis();
+        if (now - lastSave >= SAVE_INTERVAL_MS) {
+            saveQuietly();
+        }
+    }
+
+    synchronized void save() throws IOException {
+        if (!persistent) {
+            return;
+        }
+        Properties props = new Properties();
+        props.setProperty("url", url);
+        if (validator != null) {
+            props.setProperty("validator", validator);
+        }
+        props.setProperty("length", Long.toString(length));
+
+        StringBuilder segmentList = new StringBuilder();
+        for (Segment segment : segments) {
+            if (segmentList.length() > 0) segmentList.append(',');
+            segmentList.append(segment.start).append('-').append(segment.end).append('@').append(segment.position);
+        }
+        props.setProperty("segments", segmentList.toString());
+
+        Path tmp = metaFile.resolveSibling(metaFile.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            props.store(out, null);
+        }
+        Files.move(tmp, metaFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        lastSave = System.currentTimeMillis();
+    }
+
+    void saveQuietly() {
+        try {
+            save();
+        } catch (IOException e) {
+            System.err.println("No se pudo guardar el estado de reanudación: " + e.getMessage());
+        }
+    }
+
+    void delete() {
+        if (!persistent) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(metaFile);
+        } catch (IOException e) {
+            System.err.println("No se pudo borrar el estado de reanudación: " + metaFile + " -> " + e.getMessage());
+        }
+    }
+
+    /**
+     * Borra parcial y estado cuando la descarga no llega a hacerse (por ejemplo, se sirvió desde caché).
+     */
+    void discard() {
+        try {
+            if (!persistent || !canResume()) {
+                Files.deleteIfExists(partFile);
+            }
+        } catch (IOException e) {
+            System.err.println("No se pudo borrar parcial: " + partFile + " -> " + e.getMessage());
+        }
+        if (!canResume()) {
+            delete();
+        }
+    }
+
+    static String hashUrl(String url) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(url.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 8; i++) {
+                hex.append(String.format("%02x", hash[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+}
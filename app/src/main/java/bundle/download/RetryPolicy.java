@@ -0,0 +1,127 @@
+package bundle.download;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.nio.file.FileSystemException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Cuándo y cuánto esperar antes de repetir una descarga fallida. Los fallos pasajeros
+ * (conexión, servidor detenido, 5xx, 429, cuerpo cortado) se reintentan con espera
+ * exponencial y aleatoria para que muchos clientes no vuelvan a la vez; un 429 o 503
+ * con {@code Retry-After} espera lo que pide el servidor. El resto falla al momento.
+ * Lo ya recibido se conserva en el parcial, así que el siguiente intento lo reanuda.
+ */
+public final class RetryPolicy {
+
+    public static final RetryPolicy NONE = new RetryPolicy(1, Duration.ZERO, Duration.ZERO);
+    public static final RetryPolicy DEFAULT = new RetryPolicy(5, Duration.ofMillis(500), Duration.ofSeconds(30));
+
+    // Lo más que se hace caso a un Retry-After; con más, mejor fallar y que el usuario decida
+    private static final Duration MAX_RETRY_AFTER = Duration.ofMinutes(2);
+
+    public enum Failure {
+        CONNECT("sin conexión con el servidor", true),
+        STALL("el servidor dejó de enviar datos", true),
+        SERVER("error del servidor", true),
+        THROTTLED("demasiadas peticiones", true),
+        TRUNCATED("descarga cortada", true),
+        FATAL("error no recuperable", false);
+
+        public final String description;
+        public final boolean retryable;
+
+        Failure(String description, boolean retryable) {
+            this.description = description;
+            this.retryable = retryable;
+        }
+    }
+
+    public final int maxAttempts;
+    public final Duration baseDelay;
+    public final Duration maxDelay;
+
+    /**
+     * {@code maxAttempts} cuenta el primer intento: 1 no reintenta nunca.
+     */
+    public RetryPolicy(int maxAttempts, Duration baseDelay, Duration maxDelay) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+    }
+
+    /**
+     * Recorre la cadena de causas hasta dar con una que decida el tipo de fallo.
+     */
+    public static Failure classify(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IntegrityException) {
+                // Se reintenta aparte, desde cero y sin espera
+                return Failure.FATAL;
+            }
+            if (cause instanceof HttpStatusException) {
+                int status = ((HttpStatusException) cause).status;
+                if (status == 429) {
+                    return Failure.THROTTLED;
+                }
+                return status >= 500 || status == 408 ? Failure.SERVER : Failure.FATAL;
+            }
+            if (cause instanceof HttpConnectTimeoutException || cause instanceof ConnectException
+                    || cause instanceof UnknownHostException || cause instanceof NoRouteToHostException) {
+                return Failure.CONNECT;
+            }
+            if (cause instanceof HttpTimeoutException || cause instanceof SocketTimeoutException) {
+                return Failure.STALL;
+            }
+            if (cause instanceof EOFException) {
+                return Failure.TRUNCATED;
+            }
+            if (cause instanceof FileSystemException || cause instanceof InterruptedIOException) {
+                // Disco lleno, permisos o cancelación: repetir no lo arregla
+                return Failure.FATAL;
+            }
+            if (cause instanceof IOException && cause.getCause() == null) {
+                // Conexión reiniciada o cerrada a mitad del cuerpo
+                return Failure.TRUNCATED;
+            }
+        }
+        return Failure.FATAL;
+    }
+
+    public boolean shouldRetry(int attempt, Throwable error) {
+        return attempt < maxAttempts && classify(error).retryable;
+    }
+
+    /**
+     * Espera antes del intento {@code attempt + 1}: el {@code Retry-After} del servidor si lo
+     * hay, si no el doble en cada intento hasta {@link #maxDelay}, con la mitad al azar.
+     */
+    public long delayMillis(int attempt, Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof HttpStatusException && ((HttpStatusException) cause).retryAfter != null) {
+                Duration retryAfter = ((HttpStatusException) cause).retryAfter;
+                return (retryAfter.compareTo(MAX_RETRY_AFTER) > 0 ? MAX_RETRY_AFTER : retryAfter).toMillis();
+            }
+        }
+        long ceiling = baseDelay.toMillis() << Math.min(attempt - 1, 20);
+        ceiling = Math.min(Math.max(0, ceiling), maxDelay.toMillis());
+        return ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+    }
+
+    @Override
+    public String toString() {
+        return "RetryPolicy{" +
+                "maxAttempts=" + maxAttempts +
+                ", baseDelay=" + baseDelay.toMillis() + "ms" +
+                ", maxDelay=" + maxDelay.toMillis() + "ms" +
+                '}';
+    }
+}
@@ -0,0 +1,235 @@
+package bundle.download;
+
+import bundle.net.HttpTransport;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.LongConsumer;
+
+/**
+ * Descarga un archivo en varios rangos de bytes en paralelo, escribiendo cada rango
+ * directamente en su posición dentro del archivo parcial. Los rangos salen del
+ * {@link ResumeState}, así que una descarga interrumpida continúa donde quedó cada uno.
+ * Con varias fuentes los rangos se reparten entre ellas y uno atascado pasa a la siguiente;
+ * la primera es la que dio el validador del parcial.
+ * <p>
+ * Con un {@link MessageDigest} el hash se calcula mientras se descarga: cada poco se pasan por él
+ * los bytes ya escritos a continuación de lo hasheado, en orden, y al terminar solo falta la cola.
+ */
+final class SegmentedDownload {
+
+    // Veces que se vuelve a pedir un rango atascado antes de dar la descarga por fallida
+    private static final int MAX_REISSUES = 2;
+    // Cada cuánto se hashea lo que ya llegó en orden
+    private static final long HASH_PERIOD_MILLIS = 200;
+
+    private final List<URI> sources;
+    private final URI uri;
+    private final ResumeState state;
+    private final HttpTransport transport;
+    private final LongConsumer progress;
+    private final MessageDigest digest;
+    private final List<ChannelBodySubscriber> subscribers = new CopyOnWriteArrayList<>();
+    // Hasta dónde pasó el archivo por el hash
+    private long hashed;
+
+    /**
+     * @param digest hash a calcular sobre el archivo completo, o null
+     */
+    SegmentedDownload(List<URI> sources, ResumeState state, HttpTransport transport, LongConsumer progress,
+                      MessageDigest digest) {
+        this.sources = List.copyOf(sources);
+        this.uri = sources.get(0);
+        this.state = state;
+        this.transport = transport;
+        this.progress = progress;
+        this.digest = digest;
+    }
+
+    /**
+     * Calcula cuántos segmentos merece un archivo según su tamaño y las opciones.
+     */
+    static int segmentsFor(long contentLength, DownloadOptions options) {
+        if (contentLength <= 0 || options.segments <= 1) {
+            return 1;
+        }
+        long bySize = (contentLength + options.minSegmentSize - 1) / options.minSegmentSize;
+        return (int) Math.max(1, Math.min(options.segments, bySize));
+    }
+
+    /**
+     * @return false si el servidor ignoró la cabecera Range y hay que usar un solo flujo
+     */
+    boolean run() throws IOException, DownloadException {
+        List<ResumeState.Segment> pending = new ArrayList<>();
+        for (ResumeState.Segment segment : state.segments) {
+            if (!segment.isComplete()) {
+                pending.add(segment);
+            }
+        }
+        if (pending.isEmpty() && digest == null) {
+            return true;
+        }
+
+        try (FileChannel channel = FileChannel.open(state.partFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+
+            // Reservar el tamaño final para que las escrituras posicionales no extiendan el archivo
+            if (channel.size() < state.length) {
+                channel.write(ByteBuffer.allocate(1), state.length - 1);
+            }
+
+            List<CompletableFuture<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < pending.size(); i++) {
+                results.add(downloadRange(channel, pending.get(i), i % sources.size(), 0));
+            }
+
+            // Mientras llegan los rangos, este hilo va hasheando lo que ya está en orden
+            CompletableFuture<Void> all = CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0]));
+            while (digest != null && !all.isDone()) {
+                hashWritten(channel);
+                try {
+                    all.get(HASH_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    // Sigue descargando
+                }
+            }
+
+            boolean rangesHonored = true;
+            for (CompletableFuture<Boolean> result : results) {
+                if (!result.get()) {
+                    rangesHonored = false;
+                }
+            }
+            if (rangesHonored && digest != null) {
+                hashWritten(channel);
+            }
+            return rangesHonored;
+
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SegmentFailure) cause = cause.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof DownloadException) throw (DownloadException) cause;
+            throw new DownloadException("Error en descarga segmentada: " + uri, cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DownloadException("Descarga segmentada interrumpida: " + uri, e);
+        } finally {
+            // Cortar las transferencias que sigan abiertas si algún segmento falló
+            for (ChannelBodySubscriber subscriber : subscribers) {
+                subscriber.close();
+            }
+            state.saveQuietly();
+        }
+    }
+
+    /**
+     * Pasa por el hash los bytes escritos desde {@link #hashed} sin huecos. Lo anterior a la
+     * posición de un rango ya no cambia, aunque el rango se vuelva a pedir.
+     */
+    private void hashWritten(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(DownloadManager.BUFFER_SIZE);
+        for (ResumeState.Segment segment : state.segments) {
+            long written = segment.position;
+            while (hashed < written) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), written - hashed));
+                int read = channel.read(buffer, hashed);
+                if (read < 0) {
+                    throw new EOFException("Parcial más corto de lo esperado: " + state.partFile);
+                }
+                buffer.flip();
+                digest.update(buffer);
+                hashed += read;
+            }
+            if (!segment.isComplete()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Un rango atascado (sin datos, o muy por debajo del resto según {@link HttpTransport.StallPolicy})
+     * se vuelve a pedir desde donde quedó por otra conexión, sin tocar los demás, y al siguiente espejo si hay.
+     */
+    private CompletableFuture<Boolean> downloadRange(FileChannel channel, ResumeState.Segment segment,
+                                                     int source, int reissues) {
+        long start = segment.position;
+        long end = segment.end;
+        URI uri = sources.get(source);
+
+        // HTTP/1.1 a propósito: con HTTP/2 todos los rangos compartirían una sola conexión TCP
+        HttpRequest.Builder request = transport.get(uri)
+                .version(HttpClient.Version.HTTP_1_1)
+                .header("Range", "bytes=" + start + "-" + end);
+        // El validador es de la primera fuente; lo de los espejos lo comprueba el hash al final
+        if (state.validator != null && source == 0) {
+            request.header("If-Range", state.validator);
+        }
+
+        HttpResponse.BodyHandler<Long> handler = info -> {
+            if (info.statusCode() != HttpURLConnection.HTTP_PARTIAL) {
+                return ChannelBodySubscriber.rejecting();
+            }
+            ChannelBodySubscriber subscriber = new ChannelBodySubscriber(channel, start, transport, (position, bytes) -> {
+                segment.position = position;
+                progress.accept(bytes);
+                state.saveIfDue();
+            });
+            subscribers.add(subscriber);
+            return subscriber;
+        };
+
+        return transport.sendAsync(request.build(), handler).handle((response, error) -> {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                if (reissues < MAX_REISSUES && RetryPolicy.classify(cause) == RetryPolicy.Failure.STALL) {
+                    int next = (source + 1) % sources.size();
+                    System.err.println("⚠ " + cause.getMessage() + ", se vuelve a pedir el rango "
+                            + segment.position + "-" + end + (next != source ? " a " + sources.get(next).getAuthority() : ""));
+                    return downloadRange(channel, segment, next, reissues + 1);
+                }
+                throw new SegmentFailure(cause);
+            }
+            int status = response.statusCode();
+            if (status == HttpURLConnection.HTTP_OK) {
+                return CompletableFuture.completedFuture(false);
+            }
+            if (status != HttpURLConnection.HTTP_PARTIAL) {
+                throw new SegmentFailure(HttpStatusException.of(response, "HTTP error " + status + " en rango "
+                        + start + "-" + end + " para url: " + uri));
+            }
+            if (!segment.isComplete()) {
+                throw new SegmentFailure(new EOFException("Rango incompleto " + start + "-" + end
+                        + ": se recibieron " + (segment.position - start) + " bytes para url: " + uri));
+            }
+            return CompletableFuture.completedFuture(true);
+        }).thenCompose(result -> result);
+    }
+
+    /**
+     * Lleva la causa real hasta {@link #run()} a través de los CompletableFuture.
+     */
+    private static final class SegmentFailure extends RuntimeException {
+        SegmentFailure(Throwable cause) {
+            super(cause);
+        }
+    }
+}
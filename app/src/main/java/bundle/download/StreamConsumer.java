@@ -0,0 +1,8 @@
+package bundle.download;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public interface StreamConsumer {
+    void consume(String fileName, InputStream body) throws IOException;
+}
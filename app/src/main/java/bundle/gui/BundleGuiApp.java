@@ -2,7 +2,7 @@ package bundle.gui;
 
 import bundle.download.DownloadException;
 import bundle.download.DownloadManager;
-import bundle.download.ProgressCallback;
+import bundle.download.DownloadProgress;
 import bundle.installer.BundleInstaller;
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
@@ -10,6 +10,7 @@ import java.awt.*;
 import java.awt.event.*;
 import java.awt.geom.RoundRectangle2D;
 import java.io.IOException;
+import java.util.List;
 
 public class BundleGuiApp extends JFrame {
 
@@ -32,6 +33,11 @@ public class BundleGuiApp extends JFrame {
     private final JLabel finishLabel = new JLabel();
     private static final String INSTALL_PANEL = "install";
     private static final String FINISH_INSTALL_PANEL = "finish_install";
+    private static final String LOADING_TEXT = "Cargando modpacks...";
+    // La barra se refresca a ritmo fijo, sin importar cuántos hilos estén descargando
+    private static final int PROGRESS_FRAME_MS = 1000 / 15;
+    // Límites de descarga que ofrece la ventana, en KB/s; 0 es sin límite
+    private static final long[] RATE_LIMITS_KB = { 0, 20 * 1024, 10 * 1024, 5 * 1024, 2 * 1024, 1024, 512 };
 
     // Referencias para manipular visibilidad y progreso
     private JComboBox<String> combo;
@@ -186,8 +192,13 @@ public class BundleGuiApp extends JFrame {
         gbc.gridx = 1;
         gbc.weightx = 1.0;
         gbc.anchor = GridBagConstraints.WEST;
-        String[] names = installer.installerConfig.configNames.toArray(new String[0]);
+        // La configuración puede llegar después de abrir la ventana: mientras tanto, estado de carga
+        boolean loaded = installer.installerConfig != null;
+        String[] names = loaded
+                ? installer.installerConfig.configNames.toArray(new String[0])
+                : new String[] { LOADING_TEXT };
         combo = createModernComboBox(names);
+        combo.setEnabled(loaded);
         combo.addActionListener(e -> installer.selectedInstall = (String) combo.getSelectedItem());
         panel.add(combo, gbc);
 
@@ -232,6 +243,7 @@ public class BundleGuiApp extends JFrame {
         gbc.anchor = GridBagConstraints.CENTER;
         gbc.weighty = 1.0;
         btnInstall = createAccentButton("Instalar", 140, 40);
+        btnInstall.setEnabled(loaded && names.length > 0);
         btnInstall.addActionListener(e -> {
             lblModpacks.setVisible(false);
             combo.setVisible(false);
@@ -250,7 +262,7 @@ public class BundleGuiApp extends JFrame {
     private JPanel createProgressPanel() {
         JPanel mainPanel = new JPanel(new GridBagLayout());
         mainPanel.setOpaque(false);
-        mainPanel.setBorder(new EmptyBorder(20, 20, 20, 20));
+        mainPanel.setBorder(new EmptyBorder(8, 20, 8, 20));
 
         JPanel progressContainer = new JPanel();
         progressContainer.setLayout(new BoxLayout(progressContainer, BoxLayout.Y_AXIS));
@@ -283,6 +295,11 @@ public class BundleGuiApp extends JFrame {
         progressLabel.setHorizontalAlignment(SwingConstants.CENTER);
         progressContainer.add(progressLabel);
 
+        progressContainer.add(Box.createVerticalStrut(8));
+        JPanel throttle = createThrottlePanel();
+        throttle.setAlignmentX(Component.CENTER_ALIGNMENT);
+        progressContainer.add(throttle);
+
         GridBagConstraints gbc = new GridBagConstraints();
         gbc.gridx = 0;
         gbc.gridy = 0;
@@ -295,6 +312,62 @@ public class BundleGuiApp extends JFrame {
         return mainPanel;
     }
 
+    /**
+     * Límite de descarga y de escritura en disco, que se pueden cambiar durante la instalación.
+     */
+    private JPanel createThrottlePanel() {
+        JPanel panel = new JPanel(new FlowLayout(FlowLayout.CENTER, 8, 0));
+        panel.setOpaque(false);
+
+        long current = installer.bandwidthLimit() / 1024;
+        String[] labels = new String[RATE_LIMITS_KB.length];
+        int selected = -1;
+        for (int i = 0; i < RATE_LIMITS_KB.length; i++) {
+            labels[i] = RATE_LIMITS_KB[i] == 0 ? "Sin límite" : formatRate(RATE_LIMITS_KB[i]);
+            if (RATE_LIMITS_KB[i] == current) {
+                selected = i;
+            }
+        }
+        JComboBox<String> rate = createModernComboBox(labels);
+        rate.setFont(FONT_SMALL);
+        rate.setPreferredSize(new Dimension(120, 24));
+        if (selected >= 0) {
+            rate.setSelectedIndex(selected);
+        } else {
+            // Un límite de installer.properties que no está en la lista
+            rate.insertItemAt(formatRate(current), 0);
+            rate.setSelectedIndex(0);
+        }
+        rate.addActionListener(e -> {
+            int index = rate.getSelectedIndex() - (rate.getItemCount() - RATE_LIMITS_KB.length);
+            if (index >= 0) {
+                installer.setBandwidthLimit(RATE_LIMITS_KB[index] * 1024);
+            }
+        });
+
+        JLabel rateLabel = new JLabel("Descarga:");
+        rateLabel.setFont(FONT_SMALL);
+        rateLabel.setForeground(COLOR_TEXT);
+
+        // Un archivo a la vez deja el disco libre para el juego
+        JCheckBox gentleDisk = new JCheckBox("Disco suave", installer.diskWriters() == 1);
+        gentleDisk.setFont(FONT_SMALL);
+        gentleDisk.setForeground(COLOR_TEXT);
+        gentleDisk.setOpaque(false);
+        gentleDisk.setFocusPainted(false);
+        int diskWriters = installer.diskWriters();
+        gentleDisk.addActionListener(e -> installer.setDiskWriters(gentleDisk.isSelected() ? 1 : diskWriters == 1 ? 0 : diskWriters));
+
+        panel.add(rateLabel);
+        panel.add(rate);
+        panel.add(gentleDisk);
+        return panel;
+    }
+
+    private static String formatRate(long kilobytes) {
+        return kilobytes >= 1024 && kilobytes % 1024 == 0 ? kilobytes / 1024 + " MB/s" : kilobytes + " KB/s";
+    }
+
     private JProgressBar createModernProgressBar() {
         JProgressBar bar = new JProgressBar(0, 100) {
             @Override
@@ -426,41 +499,10 @@ public class BundleGuiApp extends JFrame {
     }
 
     private void performInstall() {
-        ProgressCallback progressCallback = new ProgressCallback() {
-            @Override
-            public void onDownloadStart(String fileName, long totalBytes) {
-                SwingUtilities.invokeLater(() -> {
-                    statusLabel.setText("Descargando: " + fileName);
-                    progressBar.setValue(0);
-                    progressLabel.setText("0% - Iniciando descarga...");
-                });
-            }
-
-            @Override
-            public void onProgress(long bytesDownloaded, long totalBytes, double downloadSpeed, String fileName) {
-                // Hacer las variables finales para usar en lambda
-                final int percentage = Math.min(100, (totalBytes > 0) ? (int) ((bytesDownloaded * 100) / totalBytes) : 0);
-                final String speedText = DownloadManager.formatSpeed(downloadSpeed);
-                final String sizeText = DownloadManager.formatBytes(bytesDownloaded);
-                final String totalText = (totalBytes > 0) ? DownloadManager.formatBytes(totalBytes) : "Desconocido";
-
-                SwingUtilities.invokeLater(() -> {
-                    progressBar.setValue(percentage);
-                    progressLabel.setText(String.format("%d%% - %s (%s/%s)",
-                            percentage, speedText, sizeText, totalText));
-                    statusLabel.setText("Descargando: " + fileName);
-                });
-            }
-
-            @Override
-            public void onDownloadComplete(String fileName) {
-                SwingUtilities.invokeLater(() -> {
-                    statusLabel.setText("Descarga completada: " + fileName);
-                    progressBar.setValue(100);
-                    progressLabel.setText("100% - Descarga completada");
-                });
-            }
-        };
+        DownloadProgress progress = new DownloadProgress(installer.selectedInstall);
+        Timer frames = new Timer(PROGRESS_FRAME_MS, e -> renderProgress(progress.sample()));
+        renderProgress(progress.sample());
+        frames.start();
 
         SwingWorker<Boolean, Void> worker = new SwingWorker<>() {
             private String errorMessage = null;
@@ -468,29 +510,10 @@ public class BundleGuiApp extends JFrame {
             @Override
             protected Boolean doInBackground() {
                 try {
-                    SwingUtilities.invokeLater(() -> {
-                        statusLabel.setText("Preparando instalación...");
-                        progressBar.setValue(0);
-                        progressLabel.setText("0% - Preparando...");
-                    });
-
-                    installer.install(progressCallback);
-
-                    SwingUtilities.invokeLater(() -> {
-                        statusLabel.setText("Procesando archivos descargados...");
-                        progressBar.setValue(95);
-                        progressLabel.setText("95% - Finalizando...");
-                    });
+                    installer.install(progress);
+                    progress.phase(DownloadProgress.Phase.DONE);
 
-                    Thread.sleep(500); // Delay reducido
-
-                    SwingUtilities.invokeLater(() -> {
-                        statusLabel.setText("¡Instalación completada!");
-                        progressBar.setValue(100);
-                        progressLabel.setText("100% - ¡Completado!");
-                    });
-
-                    Thread.sleep(300); // Delay reducido
+                    Thread.sleep(300); // Que se vea el último fotograma
                     return true;
 
                 } catch (IOException | DownloadException e) {
@@ -505,6 +528,7 @@ public class BundleGuiApp extends JFrame {
 
             @Override
             protected void done() {
+                frames.stop();
                 try {
                     if (get()) {
                         finishLabel.setText("¡La instalación de " + installer.selectedInstall + " fue completada exitosamente!");
@@ -532,8 +556,51 @@ public class BundleGuiApp extends JFrame {
         worker.execute();
     }
 
-    public void open() {
-        SwingUtilities.invokeLater(() -> setVisible(true));
+    private void renderProgress(DownloadProgress.Snapshot snapshot) {
+        int percentage = snapshot.percent();
+        progressBar.setValue(percentage);
+
+        switch (snapshot.phase) {
+            case PREPARE:
+                statusLabel.setText("Preparando instalación...");
+                progressLabel.setText("0% - Preparando...");
+                break;
+            case DOWNLOAD:
+                String files = snapshot.filesTotal > 1
+                        ? " (" + snapshot.filesDone + "/" + snapshot.filesTotal + " archivos)"
+                        : "";
+                statusLabel.setText("Descargando: " + (snapshot.filesTotal > 1 ? snapshot.label : snapshot.current) + files);
+                String totalText = snapshot.bytesTotal > 0 ? DownloadManager.formatBytes(snapshot.bytesTotal) : "Desconocido";
+                progressLabel.setText(String.format("%d%% - %s (%s/%s) - quedan %s", percentage,
+                        DownloadManager.formatSpeed(snapshot.rate), DownloadManager.formatBytes(snapshot.bytesDone), totalText,
+                        DownloadManager.formatDuration(snapshot.etaSeconds)));
+                break;
+            case EXTRACT:
+                statusLabel.setText("Procesando archivos descargados...");
+                progressLabel.setText(String.format("%d%% - Extrayendo %d/%d archivos (%.0f/s) - quedan %s", percentage,
+                        snapshot.entriesDone, snapshot.entriesTotal, snapshot.rate,
+                        DownloadManager.formatDuration(snapshot.etaSeconds)));
+                break;
+            case DONE:
+                statusLabel.setText("¡Instalación completada!");
+                progressLabel.setText("100% - ¡Completado!");
+                break;
+        }
+    }
+
+    /**
+     * Sustituye la lista de modpacks cuando llega una configuración nueva, conservando la selección si sigue existiendo.
+     */
+    public void updateModpacks(List<String> names, String selected) {
+        SwingUtilities.invokeLater(() -> {
+            combo.setModel(new DefaultComboBoxModel<>(names.toArray(new String[0])));
+            if (selected != null && names.contains(selected)) {
+                combo.setSelectedItem(selected);
+            }
+            installer.selectedInstall = (String) combo.getSelectedItem();
+            combo.setEnabled(true);
+            btnInstall.setEnabled(!names.isEmpty());
+        });
     }
 
     public void changeGameDir() {
@@ -1,19 +1,28 @@
 package bundle.installer;
 
 import bundle.App;
+import bundle.config.Artifact;
+import bundle.config.ConfigCache;
 import bundle.config.ConfigParseException;
 import bundle.config.ConfigParser;
 import bundle.config.DownloadConfig;
 import bundle.config.InstallerConfig;
 import bundle.config.RemoteConfigLoader;
+import bundle.download.DownloadCache;
 import bundle.download.DownloadException;
 import bundle.download.DownloadManager;
-import bundle.download.ProgressCallback;
+import bundle.download.DownloadOptions;
+import bundle.download.DownloadProgress;
+import bundle.download.IntegrityException;
+import bundle.download.MirrorRanking;
+import bundle.download.RetryPolicy;
 import bundle.gui.BundleGuiApp;
+import bundle.net.HttpTransport;
 import bundle.util.OperatingSystem;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 
+import javax.swing.SwingUtilities;
 import java.io.*;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
@@ -21,114 +30,361 @@ import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 public final class BundleInstaller {
     public Path gameDir;
     public String selectedInstall = "";
-    public final InstallerConfig installerConfig;
+    public volatile InstallerConfig installerConfig;
     public final Properties installerProperties;
-    public final BundleGuiApp gui;
+    public final DownloadOptions downloadOptions;
+    public final boolean streamingExtract;
+    public final boolean stagedInstall;
+    public BundleGuiApp gui;
+    // Null si los .jar se extraen tal cual en cada instancia
+    private final DedupStore dedupStore;
+    private final CompletableFuture<InstallerConfig> configApplied = new CompletableFuture<>();
 
-    // Pool de threads optimizado
-    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(
-            Math.min(4, Runtime.getRuntime().availableProcessors()));
+    // Pool de threads optimizado; la extracción es CPU (inflate), así que se usa un hilo por núcleo
+    private static final int EXTRACT_WORKERS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(EXTRACT_WORKERS);
+    // Compartido por todas las extracciones, también las de un lote
+    private static final IoScheduler DISK_WRITERS = new IoScheduler();
 
     // Buffer optimizado para descompresión
-    private static final int UNZIP_BUFFER_SIZE = 256 * 1024;
+    static final int UNZIP_BUFFER_SIZE = 256 * 1024;
+    // A partir de este tamaño se extrae con FileChannel.transferFrom en lugar de un buffer
+    static final long CHANNEL_EXTRACT_THRESHOLD = 1024 * 1024;
+
+    // Carpetas que el modpack controla por completo: se actualizan por diferencias con el manifiesto
+    private static final List<String> MANAGED_DIRECTORIES = List.of("mods", "config");
+    // Cachés del juego que se regeneran solas: se borran en cada instalación
+    private static final List<String> WIPED_DIRECTORIES = List.of(".fabric", "cache", ".cache");
 
     public BundleInstaller() {
-        JsonObject configObject = null;
+        this(new Properties());
+    }
+
+    /**
+     * {@code overrides} se aplica sobre installer.properties, con las mismas claves
+     * (así el modo consola cambia concurrencia, caché, etc. sin otra vía de configuración).
+     */
+    public BundleInstaller(Properties overrides) {
+        // Cargar properties de la aplicación
+        InputStream propertiesStream = App.class.getClassLoader().getResourceAsStream("installer.properties");
+        Properties properties = new Properties();
+        try {
+            properties.load(propertiesStream);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        properties.putAll(overrides);
+        this.installerProperties = properties;
+
+        // Un único transporte para la configuración y las descargas, antes de la primera petición
+        HttpTransport.setShared(new HttpTransport(
+                Duration.ofMillis(Long.parseLong(properties.getProperty("connect_timeout_ms", "30000"))),
+                Duration.ofMillis(Long.parseLong(properties.getProperty("read_timeout_ms", "60000"))),
+                new HttpTransport.StallPolicy(
+                        Long.parseLong(properties.getProperty("stall_min_kbps", "8")) * 1024,
+                        Duration.ofSeconds(Long.parseLong(properties.getProperty("stall_window_s", "20"))),
+                        Double.parseDouble(properties.getProperty("stall_straggler_ratio", "0.1")))));
+        HttpTransport.shared().limiter().setLimit(
+                Long.parseLong(properties.getProperty("bandwidth_limit_kbps", "0")) * 1024);
+        DISK_WRITERS.setLimit(Integer.parseInt(properties.getProperty("disk_writers", "0")));
+
+        DownloadCache cache = null;
+        if (Boolean.parseBoolean(properties.getProperty("cache_enabled", "true"))) {
+            long cacheMaxBytes = Long.parseLong(properties.getProperty("cache_max_mb", "4096")) * 1024 * 1024;
+            String cacheDir = properties.getProperty("cache_dir");
+            cache = new DownloadCache(cacheDir != null
+                    ? Paths.get(cacheDir)
+                    : OperatingSystem.getCurrent().getInstallerDir().resolve("cache"), cacheMaxBytes);
+        }
+        this.downloadOptions = new DownloadOptions.Builder()
+                .segments(Integer.parseInt(properties.getProperty("download_segments", "4")))
+                .resume(Boolean.parseBoolean(properties.getProperty("download_resume", "true")))
+                .concurrency(Integer.parseInt(properties.getProperty("download_concurrency", "4")))
+                .perHost(Integer.parseInt(properties.getProperty("download_per_host", "2")))
+                .cache(cache)
+                .offline(Boolean.parseBoolean(properties.getProperty("offline", "false")))
+                .retry(new RetryPolicy(Integer.parseInt(properties.getProperty("download_max_attempts", "5")),
+                        Duration.ofMillis(Long.parseLong(properties.getProperty("retry_base_delay_ms", "500"))),
+                        Duration.ofMillis(Long.parseLong(properties.getProperty("retry_max_delay_ms", "30000")))))
+                .mirrors(Boolean.parseBoolean(properties.getProperty("mirror_probe", "true"))
+                        ? new MirrorRanking(OperatingSystem.getCurrent().getInstallerDir()) : null)
+                .build();
+        this.streamingExtract = Boolean.parseBoolean(properties.getProperty("install_streaming", "false"));
+        this.stagedInstall = Boolean.parseBoolean(properties.getProperty("install_staged", "true"));
+        if (Boolean.parseBoolean(properties.getProperty("dedup_enabled", "false"))) {
+            String dedupDir = properties.getProperty("dedup_dir");
+            this.dedupStore = new DedupStore(dedupDir != null
+                    ? Paths.get(dedupDir)
+                    : OperatingSystem.getCurrent().getInstallerDir().resolve("store"));
+        } else {
+            this.dedupStore = null;
+        }
+
+        // Establecer directorio de juego por defecto
+        this.gameDir = OperatingSystem.getCurrent().getMCDir();
+
+        System.out.println("=== Inicialización completada ===");
+    }
+
+    /**
+     * Límite de descarga en bytes por segundo entre todas las conexiones; 0 lo quita.
+     * Se aplica también a las descargas en curso.
+     */
+    public void setBandwidthLimit(long bytesPerSecond) {
+        downloadOptions.transport().limiter().setLimit(bytesPerSecond);
+    }
+
+    public long bandwidthLimit() {
+        return downloadOptions.transport().limiter().limit();
+    }
+
+    /**
+     * Archivos que se escriben a la vez al extraer; 0 no limita (uno por hilo de extracción).
+     * Se aplica también a una extracción en curso.
+     */
+    public void setDiskWriters(int writers) {
+        DISK_WRITERS.setLimit(writers);
+    }
+
+    public int diskWriters() {
+        return DISK_WRITERS.limit();
+    }
+
+    /**
+     * Carga la configuración de modpacks en segundo plano (caché, remota o local, en ese orden)
+     * y la aplica en el hilo de Swing. El futuro termina cuando la lista ya está en la ventana.
+     */
+    public CompletableFuture<InstallerConfig> loadConfig() {
+        CompletableFuture.supplyAsync(this::resolveConfig)
+                .thenAcceptAsync(cfg -> {
+                    applyConfig(cfg);
+                    configApplied.complete(cfg);
+                }, SwingUtilities::invokeLater)
+                .exceptionally(e -> {
+                    configApplied.completeExceptionally(e);
+                    return null;
+                });
+        return configApplied;
+    }
+
+    private InstallerConfig resolveConfig() {
         InstallerConfig cfg = null;
 
         System.out.println("=== Cargando configuración de modpacks ===");
 
-        // Intentar cargar configuración remota primero
-        try {
-            System.out.println("Intentando cargar configuración desde GitHub API...");
-            configObject = RemoteConfigLoader.loadAndValidateRemoteConfig();
+        // La última configuración remota válida permite abrir la ventana sin esperar a la red
+        ConfigCache configCache = new ConfigCache(OperatingSystem.getCurrent().getInstallerDir());
+        ConfigCache.Entry cachedConfig = configCache.load();
+        if (cachedConfig != null) {
+            try {
+                cfg = ConfigParser.parse(cachedConfig.config);
+                System.out.println("✓ Usando configuración en caché, se revalidará en segundo plano");
+            } catch (ConfigParseException e) {
+                System.err.println("⚠ Configuración en caché inválida: " + e.getMessage());
+                cachedConfig = null;
+            }
+        }
+
+        // Si no hay caché, cargar la configuración remota antes de continuar
+        if (cfg == null) {
+            try {
+                System.out.println("Intentando cargar configuración desde GitHub API...");
+                ConfigCache.Entry remote = RemoteConfigLoader.loadAndValidateRemoteConfig(null);
 
-            if (configObject != null) {
-                System.out.println("✓ Usando configuración remota actualizada");
-                cfg = ConfigParser.parse(configObject);
+                if (remote != null) {
+                    System.out.println("✓ Usando configuración remota actualizada");
+                    cfg = ConfigParser.parse(remote.config);
+                    configCache.save(remote);
+                }
+            } catch (Exception e) {
+                System.err.println("✗ Error al cargar configuración remota: " + e.getMessage());
             }
-        } catch (Exception e) {
-            System.err.println("✗ Error al cargar configuración remota: " + e.getMessage());
         }
 
         // Fallback a configuración local
         if (cfg == null) {
-            System.out.println("Cargando configuración local de respaldo...");
-            InputStream configStream = BundleInstaller.class.getClassLoader().getResourceAsStream("installer_config.json");
-            if (configStream != null) {
-                try {
-                    InputStreamReader reader = new InputStreamReader(configStream, StandardCharsets.UTF_8);
-                    configObject = new Gson().fromJson(reader, JsonObject.class);
-                    cfg = ConfigParser.parse(configObject);
-                    System.out.println("✓ Usando configuración local");
-                } catch (ConfigParseException e) {
-                    System.err.println("✗ Error al parsear configuración local: " + e.getMessage());
-                    cfg = new InstallerConfig.Builder().build();
+            cfg = loadLocalConfig();
+        }
+
+        logAvailable(cfg);
+
+        if (cachedConfig != null) {
+            refreshConfig(configCache, cachedConfig);
+        }
+        return cfg;
+    }
+
+    /**
+     * Carga la configuración sin interfaz ni tareas en segundo plano: revalida la copia en caché
+     * (o descarga una nueva) y, si no hay red, usa la caché o la local. Con {@code offline} no se
+     * hace ninguna petición.
+     */
+    public InstallerConfig loadConfigNow(boolean offline) {
+        System.out.println("=== Cargando configuración de modpacks ===");
+
+        ConfigCache configCache = new ConfigCache(OperatingSystem.getCurrent().getInstallerDir());
+        ConfigCache.Entry cachedConfig = configCache.load();
+        InstallerConfig cfg = null;
+
+        if (!offline) {
+            ConfigCache.Entry remote = RemoteConfigLoader.loadAndValidateRemoteConfig(cachedConfig);
+            if (remote != null) {
+                cfg = parseOrNull(remote.config, "remota");
+                if (cfg != null && remote != cachedConfig) {
+                    configCache.save(remote);
                 }
-            } else {
-                System.err.println("✗ No se encontró configuración local");
-                cfg = new InstallerConfig.Builder().build();
             }
         }
+        if (cfg == null && cachedConfig != null) {
+            cfg = parseOrNull(cachedConfig.config, "en caché");
+            if (cfg != null) {
+                System.out.println("✓ Usando configuración en caché");
+            }
+        }
+        if (cfg == null) {
+            cfg = loadLocalConfig();
+        }
 
-        this.installerConfig = cfg;
+        logAvailable(cfg);
+        applyConfig(cfg);
+        return cfg;
+    }
 
-        // Seleccionar el primer modpack disponible
-        if (!installerConfig.configNames.isEmpty()) {
-            selectedInstall = installerConfig.configNames.get(0);
-            System.out.println("Modpacks disponibles: " + installerConfig.configNames);
-            System.out.println("Modpack seleccionado por defecto: " + selectedInstall);
-        } else {
-            System.err.println("⚠ No hay modpacks disponibles en la configuración");
+    private static InstallerConfig parseOrNull(JsonObject config, String origin) {
+        try {
+            return ConfigParser.parse(config);
+        } catch (ConfigParseException e) {
+            System.err.println("✗ Error al parsear configuración " + origin + ": " + e.getMessage());
+            return null;
         }
+    }
 
-        // Cargar properties de la aplicación
-        InputStream propertiesStream = App.class.getClassLoader().getResourceAsStream("installer.properties");
-        Properties properties = new Properties();
+    private static InstallerConfig loadLocalConfig() {
+        System.out.println("Cargando configuración local de respaldo...");
+        InputStream configStream = BundleInstaller.class.getClassLoader().getResourceAsStream("installer_config.json");
+        if (configStream == null) {
+            System.err.println("✗ No se encontró configuración local");
+            return new InstallerConfig.Builder().build();
+        }
         try {
-            properties.load(propertiesStream);
-        } catch (IOException e) {
-            e.printStackTrace();
+            InputStreamReader reader = new InputStreamReader(configStream, StandardCharsets.UTF_8);
+            JsonObject configObject = new Gson().fromJson(reader, JsonObject.class);
+            InstallerConfig cfg = ConfigParser.parse(configObject);
+            System.out.println("✓ Usando configuración local");
+            return cfg;
+        } catch (ConfigParseException e) {
+            System.err.println("✗ Error al parsear configuración local: " + e.getMessage());
+            return new InstallerConfig.Builder().build();
         }
-        this.installerProperties = properties;
+    }
 
-        // Establecer directorio de juego por defecto
-        this.gameDir = OperatingSystem.getCurrent().getMCDir();
+    private static void logAvailable(InstallerConfig cfg) {
+        if (!cfg.configNames.isEmpty()) {
+            System.out.println("Modpacks disponibles: " + cfg.configNames);
+        } else {
+            System.err.println("⚠ No hay modpacks disponibles en la configuración");
+        }
+    }
 
-        // Inicializar la interfaz gráfica
-        this.gui = new BundleGuiApp(this);
+    /**
+     * Revalida la configuración en caché con una petición condicional y, si cambió,
+     * la guarda y actualiza la lista de modpacks de la ventana.
+     */
+    private void refreshConfig(ConfigCache configCache, ConfigCache.Entry cached) {
+        // Se espera a que la copia en caché esté aplicada para no pisar la versión nueva con ella
+        CompletableFuture.supplyAsync(() -> RemoteConfigLoader.loadAndValidateRemoteConfig(cached))
+                .thenAcceptBoth(configApplied, (fresh, ignored) -> {
+                    if (fresh == null) {
+                        System.err.println("⚠ No se pudo revalidar la configuración, se mantiene la copia en caché");
+                        return;
+                    }
+                    if (fresh == cached) {
+                        return;
+                    }
+                    configCache.save(fresh);
+                    if (fresh.config.equals(cached.config)) {
+                        return;
+                    }
+                    try {
+                        InstallerConfig cfg = ConfigParser.parse(fresh.config);
+                        SwingUtilities.invokeLater(() -> applyConfig(cfg));
+                        System.out.println("✓ Lista de modpacks actualizada: " + cfg.configNames);
+                    } catch (ConfigParseException e) {
+                        System.err.println("✗ Error al parsear configuración remota: " + e.getMessage());
+                    }
+                });
+    }
 
-        System.out.println("=== Inicialización completada ===");
+    // Solo en el hilo de Swing (o sin ventana), igual que su construcción, para no perder actualizaciones
+    private void applyConfig(InstallerConfig cfg) {
+        this.installerConfig = cfg;
+        if (!cfg.configs.containsKey(selectedInstall)) {
+            selectedInstall = cfg.configNames.isEmpty() ? "" : cfg.configNames.get(0);
+            System.out.println("Modpack seleccionado por defecto: " + selectedInstall);
+        }
+        if (gui != null) {
+            gui.updateModpacks(cfg.configNames, selectedInstall);
+        }
     }
 
-    public void openUI() {
-        gui.open();
+    /**
+     * Construye y muestra la ventana en el hilo de Swing. Si la configuración aún no ha llegado,
+     * la lista de modpacks aparece en estado de carga hasta que {@link #loadConfig()} termine.
+     */
+    public CompletableFuture<Void> openUI() {
+        return CompletableFuture.runAsync(() -> {
+            if (gui == null) {
+                gui = new BundleGuiApp(this);
+            }
+            gui.setVisible(true);
+        }, SwingUtilities::invokeLater);
     }
 
     public void install() throws IOException, DownloadException {
         install(null);
     }
 
-    public void install(ProgressCallback progressCallback) throws IOException, DownloadException {
+    public void install(DownloadProgress progress) throws IOException, DownloadException {
         if (this.gameDir == null) {
             throw new DownloadException("El directorio seleccionado esta vacio!");
         }
+        if (progress == null) {
+            // Sin interfaz el progreso solo sirve para el registro de ritmos
+            progress = new DownloadProgress(selectedInstall);
+        }
 
-        // Limpiar archivos parciales
+        // Limpiar archivos parciales que no se puedan reanudar
         cleanupPartialFiles(gameDir);
 
-        // Limpiar carpetas conflictivas
+        // Limpiar carpetas de caché del juego; mods y config se actualizan por diferencias
         deleteDirectoriesOptimized(gameDir);
 
         DownloadConfig dlConfig = this.installerConfig.configs.get(selectedInstall);
@@ -140,95 +396,588 @@ public final class BundleInstaller {
             throw new DownloadException(String.format("El directorio '%s' no existe!", gameDir));
         }
 
-        // Descargar archivos
-        List<DownloadException> errors = DownloadManager.downloadFilesTo(gameDir, dlConfig, progressCallback);
-        if (!errors.isEmpty()) {
-            for (DownloadException e : errors) {
-                e.printStackTrace();
+        boolean archivesOnly = dlConfig.artifacts.stream().allMatch(Artifact::isArchive);
+
+        // Descargar y extraer a la vez cuando no hay copia en caché que aprovechar (el almacén compartido
+        // necesita el ZIP entero). Con etapas se extrae en streaming dentro de la etapa
+        if (streamingExtract && dedupStore == null && archivesOnly && !downloadOptions.offline && !isCached(dlConfig) && installStreaming(dlConfig, progress)) {
+            return;
+        }
+
+        InstallManifest previous = InstallManifest.load(gameDir);
+        InstallManifest current = new InstallManifest();
+        current.pack = selectedInstall;
+
+        // Los archivos sueltos que no cambiaron desde la última instalación ni se descargan
+        List<Artifact> pending = new ArrayList<>();
+        for (Artifact artifact : dlConfig.artifacts) {
+            if (!artifact.isArchive()
+                    && previous.isUnchangedFile(artifact.path, artifact.sha256, gameDir.resolve(artifact.path))) {
+                current.keep(artifact.path, previous);
+            } else {
+                pending.add(artifact);
             }
-            throw new IOException("Errores durante la descarga, no se puede continuar.");
+        }
+        int skipped = dlConfig.artifacts.size() - pending.size();
+        if (skipped > 0) {
+            System.out.println("Archivos sin cambios, no se descargan: " + skipped);
         }
 
-        // Procesar archivos ZIP
-        processZipFiles(gameDir);
+        // Con etapas todo se escribe aparte y la instalación actual no se toca hasta el final. Se descarga
+        // fuera de la etapa para que los parciales sobrevivan a una etapa descartada
+        Path downloads = stagedInstall ? StagedInstall.downloadsDir(gameDir) : gameDir;
+        if (stagedInstall) {
+            cleanupPartialFiles(downloads);
+        }
+        StagedInstall staged = stagedInstall ? StagedInstall.prepare(gameDir, previous, MANAGED_DIRECTORIES) : null;
+        Path target = staged != null ? staged.dir() : gameDir;
+        try {
+            // Descargar archivos
+            if (!pending.isEmpty()) {
+                long start = System.nanoTime();
+                long before = progress.bytesDownloaded();
+                List<DownloadException> errors = DownloadManager.downloadArtifactsTo(downloads, pending, downloadOptions, progress);
+                if (!errors.isEmpty()) {
+                    for (DownloadException e : errors) {
+                        e.printStackTrace();
+                    }
+                    throw new IOException("Errores durante la descarga, no se puede continuar.");
+                }
+                logThroughput("Descarga", progress.bytesDownloaded() - before, start);
+            }
+
+            for (Artifact artifact : pending) {
+                if (!artifact.isArchive()) {
+                    Path file = target.resolve(artifact.path);
+                    if (!downloads.equals(target)) {
+                        Files.createDirectories(file.getParent());
+                        Files.move(downloads.resolve(artifact.path), file, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                    current.recordFile(artifact.path, artifact.sha256, file);
+                }
+            }
+
+            // Procesar archivos ZIP
+            List<IOException> extractErrors = new ArrayList<>();
+            boolean extracted = processZipFiles(downloads, target, previous, current, extractErrors, progress);
+
+            // Sin ningún ZIP ni archivo suelto no hay con qué comparar: no tocar lo instalado
+            if (!extracted && archivesOnly) {
+                if (staged != null) {
+                    staged.abort();
+                }
+                return;
+            }
+
+            if (staged != null) {
+                throwIfFailed(extractErrors);
+                staged.commit(previous, current);
+                // Instalado: ya no queda nada que reanudar
+                Trash.discard(gameDir, downloads);
+            } else {
+                finishManifest(gameDir, previous, current, extractErrors);
+            }
+        } catch (IOException | RuntimeException e) {
+            if (staged != null) {
+                staged.abort();
+            }
+            throw e;
+        }
+        finishDedup();
     }
 
-    private void cleanupPartialFiles(Path directory) {
+    /**
+     * Vuelve a la instalación anterior a la última hecha por etapas en {@code directory}.
+     * Devuelve false si no hay copia de respaldo.
+     */
+    public static boolean rollback(Path directory) throws IOException {
+        return StagedInstall.rollback(directory, MANAGED_DIRECTORIES);
+    }
+
+    /**
+     * Instala varios modpacks en varios directorios en una sola pasada. Cada artefacto distinto
+     * se descarga una sola vez a un directorio temporal y desde ahí se extrae o copia a todos
+     * los destinos que lo usan; los destinos se procesan a la vez y sus entradas se reparten
+     * entre los mismos hilos de extracción. Un error en un destino no detiene a los demás.
+     */
+    public void installBatch(List<InstallJob> jobs, DownloadProgress progress) throws IOException, DownloadException {
+        if (progress == null) {
+            progress = new DownloadProgress("lote");
+        }
+
+        Map<InstallJob, DownloadConfig> configs = new LinkedHashMap<>();
+        Map<InstallJob, InstallManifest> previous = new HashMap<>();
+        Set<Path> directories = new HashSet<>();
+        for (InstallJob job : jobs) {
+            DownloadConfig dlConfig = this.installerConfig.configs.get(job.pack);
+            if (dlConfig == null) {
+                throw new DownloadException("No se encontró el modpack: " + job.pack);
+            }
+            if (!Files.isDirectory(job.gameDir)) {
+                throw new DownloadException(String.format("El directorio '%s' no existe!", job.gameDir));
+            }
+            // Dos trabajos sobre el mismo directorio se pisarían los archivos y el manifiesto
+            Path real = job.gameDir.toRealPath();
+            if (!directories.add(real)) {
+                throw new DownloadException("Directorio repetido en el lote: " + job.gameDir);
+            }
+            configs.put(job, dlConfig);
+            previous.put(job, InstallManifest.load(job.gameDir));
+        }
+
+        // Una descarga por artefacto distinto; los sueltos solo si algún destino no lo tiene ya
+        Map<String, Artifact> unique = new LinkedHashMap<>();
+        configs.forEach((job, dlConfig) -> {
+            for (Artifact artifact : dlConfig.artifacts) {
+                if (artifact.isArchive() || !previous.get(job).isUnchangedFile(artifact.path, artifact.sha256,
+                        job.gameDir.resolve(artifact.path))) {
+                    unique.putIfAbsent(artifactKey(artifact), artifact);
+                }
+            }
+        });
+        int total = configs.values().stream().mapToInt(dlConfig -> dlConfig.artifacts.size()).sum();
+        System.out.println("=== Lote: " + jobs.size() + " instalaciones, " + unique.size()
+                + " descargas para " + total + " artefactos ===");
+
+        Path staging = Files.createTempDirectory(
+                Files.createDirectories(OperatingSystem.getCurrent().getInstallerDir()), "batch-");
         try {
-            if (Files.exists(directory) && Files.isDirectory(directory)) {
-                Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
-                    @Override
-                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
-                        if (file.getFileName().toString().matches("dl-.*\\.part")) {
-                            try {
-                                Files.deleteIfExists(file);
-                            } catch (IOException e) {
-                                System.err.println("No se pudo borrar parcial: " + file + " -> " + e.getMessage());
-                            }
-                        }
-                        return FileVisitResult.CONTINUE;
+            List<Artifact> downloads = new ArrayList<>(unique.values());
+            Map<Artifact, Path> targetDirs = new HashMap<>();
+            for (int i = 0; i < downloads.size(); i++) {
+                targetDirs.put(downloads.get(i), Files.createDirectories(staging.resolve(Integer.toString(i))));
+            }
+
+            long start = System.nanoTime();
+            Map<Artifact, Path> staged = new ConcurrentHashMap<>();
+            List<DownloadException> errors = DownloadManager.downloadArtifacts(downloads, targetDirs::get,
+                    downloadOptions, progress, staged);
+            if (!errors.isEmpty()) {
+                for (DownloadException e : errors) {
+                    e.printStackTrace();
+                }
+                throw new IOException("Errores durante la descarga, no se puede continuar.");
+            }
+            // Lo servido desde la caché no cuenta para la velocidad
+            logThroughput("Descarga del lote", progress.bytesDownloaded(), start);
+
+            // Cada destino en su hilo; la extracción en sí va al ejecutor compartido
+            ExecutorService targets = Executors.newFixedThreadPool(Math.min(jobs.size(), EXTRACT_WORKERS));
+            List<Future<?>> futures = new ArrayList<>();
+            DownloadProgress shared = progress;
+            for (InstallJob job : jobs) {
+                futures.add(targets.submit(() -> {
+                    installJob(job, configs.get(job), previous.get(job),
+                            artifact -> staged.get(unique.get(artifactKey(artifact))), shared);
+                    return null;
+                }));
+            }
+            targets.shutdown();
+
+            List<String> failed = new ArrayList<>();
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).get();
+                    System.out.println("✓ Instalado " + jobs.get(i));
+                } catch (ExecutionException e) {
+                    System.err.println("✗ Falló " + jobs.get(i) + ": " + e.getCause().getMessage());
+                    failed.add(jobs.get(i).toString());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Instalación por lotes interrumpida");
+                }
+            }
+            if (!failed.isEmpty()) {
+                throw new IOException(failed.size() + " de " + jobs.size() + " instalaciones fallaron: " + failed);
+            }
+            finishDedup();
+        } finally {
+            Trash.deleteLater(staging);
+        }
+    }
+
+    // Dos modpacks que piden la misma URL con el mismo hash comparten descarga
+    private static String artifactKey(Artifact artifact) {
+        return artifact.url + '#' + artifact.sha256;
+    }
+
+    private void installJob(InstallJob job, DownloadConfig dlConfig, InstallManifest previous,
+                            Function<Artifact, Path> staged, DownloadProgress progress) throws IOException {
+        cleanupPartialFiles(job.gameDir);
+        deleteDirectoriesOptimized(job.gameDir);
+
+        InstallManifest current = new InstallManifest();
+        current.pack = job.pack;
+        List<IOException> errors = new ArrayList<>();
+        StagedInstall stage = stagedInstall ? StagedInstall.prepare(job.gameDir, previous, MANAGED_DIRECTORIES) : null;
+        Path dir = stage != null ? stage.dir() : job.gameDir;
+        try {
+            installArtifacts(dir, dlConfig, previous, current, staged, errors, progress);
+            if (stage != null) {
+                throwIfFailed(errors);
+                stage.commit(previous, current);
+            } else {
+                finishManifest(job.gameDir, previous, current, errors);
+            }
+        } catch (IOException | RuntimeException e) {
+            if (stage != null) {
+                stage.abort();
+            }
+            throw e;
+        }
+    }
+
+    private void installArtifacts(Path dir, DownloadConfig dlConfig, InstallManifest previous,
+                                  InstallManifest current, Function<Artifact, Path> staged,
+                                  List<IOException> errors, DownloadProgress progress) throws IOException {
+        for (Artifact artifact : dlConfig.artifacts) {
+            if (artifact.isArchive()) {
+                Path zip = staged.apply(artifact);
+                System.out.println("Descomprimiendo: " + zip.getFileName() + " en " + dir);
+                errors.addAll(unzipFileOptimized(zip, dir, previous, current, progress));
+                continue;
+            }
+
+            Path target = dir.resolve(artifact.path);
+            if (previous.isUnchangedFile(artifact.path, artifact.sha256, target)) {
+                current.keep(artifact.path, previous);
+                continue;
+            }
+            Files.createDirectories(target.getParent());
+            // Copia, no enlace: el juego puede editar el archivo y el cambio llegaría a los demás destinos
+            Files.copy(staged.apply(artifact), target, StandardCopyOption.REPLACE_EXISTING);
+            current.recordFile(artifact.path, artifact.sha256, target);
+        }
+    }
+
+    private boolean isCached(DownloadConfig dlConfig) {
+        DownloadCache cache = downloadOptions.cache;
+        return cache != null && dlConfig.urls.stream().allMatch(url -> cache.lookup(url) != null);
+    }
+
+    /**
+     * Extrae cada ZIP mientras se descarga. Devuelve false si el archivo no se puede leer
+     * en streaming y hay que descargarlo entero para usar su directorio central.
+     * Con etapas se extrae dentro de la etapa, que se descarta si hay que volver a la descarga normal.
+     */
+    private boolean installStreaming(DownloadConfig dlConfig, DownloadProgress progress)
+            throws IOException {
+        InstallManifest previous = InstallManifest.load(gameDir);
+        InstallManifest current = new InstallManifest();
+        current.pack = selectedInstall;
+        List<IOException> errors = new ArrayList<>();
+        List<DownloadProgress.Task> tasks = new ArrayList<>();
+
+        StagedInstall staged = stagedInstall ? StagedInstall.prepare(gameDir, previous, MANAGED_DIRECTORIES) : null;
+        Path target = staged != null ? staged.dir() : gameDir;
+        try {
+            for (Artifact artifact : dlConfig.artifacts) {
+                StreamingZipExtractor extractor = new StreamingZipExtractor(target, previous, current,
+                        UNZIP_BUFFER_SIZE, DISK_WRITERS);
+                DownloadProgress.Task task = progress.task(artifact.size);
+                tasks.add(task);
+                boolean streamed = false;
+                try {
+                    DownloadManager.streamFrom(artifact, downloadOptions, task,
+                            (fileName, body) -> extractor.extract(body));
+                    streamed = !current.files.isEmpty();
+                    if (!streamed) {
+                        System.err.println("⚠ No se encontraron entradas al extraer en streaming, se descargará completo");
                     }
-                });
+                } catch (StreamingZipExtractor.CentralDirectoryRequiredException e) {
+                    System.err.println("⚠ " + e.getMessage() + ", se descargará completo");
+                } catch (IntegrityException e) {
+                    // Lo extraído no queda en el manifiesto, así que la instalación normal lo sobrescribe
+                    System.err.println("⚠ " + e.getMessage() + ", se descargará de nuevo");
+                } catch (InterruptedIOException e) {
+                    throw e;
+                } catch (IOException | DownloadException e) {
+                    // Corte, atasco o error HTTP: la descarga normal reintenta, reanuda y prueba los espejos
+                    System.err.println("⚠ Falló la descarga en streaming (" + e.getMessage()
+                            + "), se descargará de forma reanudable");
+                }
+                if (!streamed) {
+                    // La descarga normal vuelve a contar desde cero
+                    tasks.forEach(DownloadProgress.Task::discard);
+                    if (staged != null) {
+                        staged.abort();
+                    }
+                    return false;
+                }
+                errors.addAll(extractor.errors());
+            }
+
+            if (staged != null) {
+                throwIfFailed(errors);
+                staged.commit(previous, current);
+            } else {
+                finishManifest(gameDir, previous, current, errors);
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            if (staged != null) {
+                staged.abort();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Los parciales solo se crean en la raíz del directorio de juego. Con la reanudación activa
+     * se conservan los que tienen su archivo de estado; el resto son restos de intentos sin reanudación.
+     */
+    private void cleanupPartialFiles(Path directory) {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "dl-*.part*")) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                boolean resumable;
+                if (name.endsWith(".part")) {
+                    resumable = Files.exists(file.resolveSibling(name + ".meta"));
+                } else if (name.endsWith(".part.meta")) {
+                    resumable = Files.exists(file.resolveSibling(name.substring(0, name.length() - ".meta".length())));
+                } else {
+                    resumable = false;
+                }
+
+                if (downloadOptions.resume && resumable) {
+                    continue;
+                }
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    System.err.println("No se pudo borrar parcial: " + file + " -> " + e.getMessage());
+                }
             }
         } catch (IOException e) {
             System.err.println("Advertencia al limpiar parciales: " + e.getMessage());
         }
     }
 
-    private void processZipFiles(Path directory) throws IOException {
-        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.zip")) {
+    private static void logThroughput(String phase, long bytes, long startNanos) {
+        long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        System.out.println("✓ " + phase + ": " + DownloadManager.formatBytes(bytes) + " en "
+                + DownloadManager.formatDuration(millis / 1000) + " ("
+                + DownloadManager.formatSpeed(bytes * 1000.0 / millis) + " de media)");
+    }
+
+    /**
+     * Extrae solo lo que cambió respecto al manifiesto de la instalación anterior y borra
+     * lo que ya no forma parte del modpack. Sin manifiesto se extrae todo.
+     */
+    private boolean processZipFiles(Path zipDir, Path targetDir, InstallManifest previous, InstallManifest current,
+                                    List<IOException> errors, DownloadProgress progress) throws IOException {
+        boolean extracted = false;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(zipDir, "*.zip")) {
             for (Path zipFile : stream) {
                 System.out.println("Descomprimiendo: " + zipFile.getFileName());
-                unzipFileOptimized(zipFile, directory);
+                errors.addAll(unzipFileOptimized(zipFile, targetDir, previous, current, progress));
                 Files.deleteIfExists(zipFile);
                 System.out.println("Archivo ZIP eliminado: " + zipFile.getFileName());
+                extracted = true;
             }
         }
+        return extracted;
+    }
+
+    private void finishDedup() {
+        if (dedupStore != null) {
+            System.out.println("✓ Almacén compartido: " + dedupStore.drainStats());
+            dedupStore.prune();
+        }
     }
 
-    private void unzipFileOptimized(Path zipFilePath, Path targetDir) throws IOException {
+    private void finishManifest(Path directory, InstallManifest previous, InstallManifest current,
+                                List<IOException> errors) throws IOException {
+        removeStaleFiles(directory, previous, current);
+        current.save(directory);
+
+        // Lo extraído bien queda en el manifiesto; lo que falló se reintentará en la próxima instalación
+        throwIfFailed(errors);
+    }
+
+    private static void throwIfFailed(List<IOException> errors) throws IOException {
+        if (!errors.isEmpty()) {
+            IOException failure = new IOException(errors.size() + " archivo(s) no se pudieron extraer: "
+                    + errors.get(0).getMessage());
+            for (IOException e : errors) {
+                System.err.println(e.getMessage());
+                failure.addSuppressed(e);
+            }
+            throw failure;
+        }
+    }
+
+    /**
+     * Reparte la extracción entre los hilos de {@link #EXECUTOR}. Cada hilo abre su propio
+     * {@link ZipFile} y va tomando entradas de una lista ordenada de mayor a menor tamaño,
+     * para que un archivo grande no quede solo al final. Los errores por entrada se acumulan
+     * y se devuelven para informarlos juntos.
+     */
+    private List<IOException> unzipFileOptimized(Path zipFilePath, Path targetDir,
+                                                 InstallManifest previous, InstallManifest current,
+                                                 DownloadProgress progress) throws IOException {
+        List<ZipEntry> pending = new ArrayList<>();
+        List<IOException> rejected = new ArrayList<>();
+        int unchanged = 0;
+
         try (ZipFile zipFile = new ZipFile(zipFilePath.toFile(), StandardCharsets.UTF_8)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                Path entryPath;
+                try {
+                    entryPath = resolveEntry(targetDir, name);
+                } catch (IOException e) {
+                    rejected.add(e);
+                    continue;
+                }
 
-            // Crear directorios necesarios
-            zipFile.stream()
-                    .filter(ZipEntry::isDirectory)
-                    .forEach(entry -> {
+                if (entry.isDirectory()) {
+                    Files.createDirectories(entryPath);
+                } else if (previous.isUnchanged(name, entry.getSize(), entry.getCrc(), entryPath)) {
+                    current.keep(name, previous);
+                    unchanged++;
+                } else {
+                    pending.add(entry);
+                }
+            }
+        }
+
+        // Las entradas grandes primero
+        pending.sort(Comparator.comparingLong(ZipEntry::getCompressedSize).reversed());
+        progress.extracting(pending.size());
+        long start = System.nanoTime();
+
+        Queue<IOException> errors = new ConcurrentLinkedQueue<>(rejected);
+        AtomicInteger next = new AtomicInteger();
+        int workers = Math.min(EXTRACT_WORKERS, pending.size());
+        List<Future<?>> futures = new ArrayList<>(workers);
+
+        for (int i = 0; i < workers; i++) {
+            futures.add(EXECUTOR.submit(() -> {
+                try (ZipFile zipFile = new ZipFile(zipFilePath.toFile(), StandardCharsets.UTF_8)) {
+                    int index;
+                    while ((index = next.getAndIncrement()) < pending.size()) {
+                        ZipEntry entry = pending.get(index);
                         try {
-                            Path entryPath = targetDir.resolve(entry.getName());
-                            Files.createDirectories(entryPath);
+                            DISK_WRITERS.acquire();
+                            try {
+                                if (dedupStore != null && DedupStore.accepts(entry)) {
+                                    dedupStore.extract(zipFile, entry, targetDir.resolve(entry.getName()), UNZIP_BUFFER_SIZE);
+                                } else {
+                                    extractFileEntry(zipFile, entry, targetDir);
+                                }
+                            } finally {
+                                DISK_WRITERS.release();
+                            }
+                            current.record(entry.getName(), entry.getSize(), entry.getCrc(), targetDir.resolve(entry.getName()));
                         } catch (IOException e) {
-                            System.err.println("Error creando directorio: " + entry.getName() + " -> " + e.getMessage());
+                            errors.add(new IOException("Error extrayendo: " + entry.getName() + " -> " + e.getMessage(), e));
                         }
-                    });
+                        progress.entryExtracted();
+                    }
+                } catch (IOException e) {
+                    errors.add(e);
+                }
+            }));
+        }
 
-            // Extraer archivos
-            zipFile.stream()
-                    .filter(entry -> !entry.isDirectory())
-                    .forEach(entry -> {
-                        try {
-                            extractFileEntry(zipFile, entry, targetDir);
-                        } catch (IOException e) {
-                            System.err.println("Error extrayendo: " + entry.getName() + " -> " + e.getMessage());
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                errors.add(new IOException("Fallo en hilo de extracción", e.getCause()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Extracción interrumpida");
+            }
+        }
+
+        long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        System.out.println("Archivos sin cambios: " + unchanged + ", extraídos: "
+                + (pending.size() + rejected.size() - errors.size()) + ", con error: " + errors.size()
+                + " (" + millis + " ms, " + (pending.size() * 1000L / millis) + " archivos/s)");
+        return new ArrayList<>(errors);
+    }
+
+    /**
+     * Borra lo que instaló la vez anterior y ya no está en el modpack, y cualquier archivo
+     * de las carpetas gestionadas que no venga en él (antes se borraban enteras).
+     */
+    private void removeStaleFiles(Path installDir, InstallManifest previous, InstallManifest current) {
+        for (String path : previous.files.keySet()) {
+            if (!current.contains(path)) {
+                try {
+                    Files.deleteIfExists(installDir.resolve(path));
+                } catch (IOException e) {
+                    System.err.println("No se pudo borrar archivo obsoleto: " + path + " -> " + e.getMessage());
+                }
+            }
+        }
+
+        for (String directory : MANAGED_DIRECTORIES) {
+            Path root = installDir.resolve(directory);
+            if (!Files.isDirectory(root)) {
+                continue;
+            }
+            try {
+                Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                        if (!current.contains(InstallManifest.key(installDir, file))) {
+                            Files.delete(file);
                         }
-                    });
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException e) {
+                System.err.println("Error limpiando " + directory + ": " + e.getMessage());
+            }
         }
     }
 
-    private void extractFileEntry(ZipFile zipFile, ZipEntry entry, Path targetDir) throws IOException {
-        String entryName = entry.getName();
-        Path entryPath = targetDir.resolve(entryName);
+    private static void extractFileEntry(ZipFile zipFile, ZipEntry entry, Path targetDir) throws IOException {
+        extractEntry(zipFile, entry, targetDir, CHANNEL_EXTRACT_THRESHOLD, UNZIP_BUFFER_SIZE);
+    }
+
+    /**
+     * Umbral y buffer como parámetros para poder medirlos (ver los benchmarks de {@code src/jmh}).
+     */
+    static void extractEntry(ZipFile zipFile, ZipEntry entry, Path targetDir,
+                             long channelThreshold, int bufferSize) throws IOException {
+        Path entryPath = resolveEntry(targetDir, entry.getName());
 
         Files.createDirectories(entryPath.getParent());
+        // Puede ser un enlace al almacén compartido: escribir encima cambiaría todas las instancias
+        Files.deleteIfExists(entryPath);
 
-        // Usar NIO channels para archivos grandes (> 1MB)
-        if (entry.getSize() > 1024 * 1024) {
+        // Usar NIO channels para archivos grandes
+        if (entry.getSize() > channelThreshold) {
             extractLargeFile(zipFile, entry, entryPath);
         } else {
-            extractSmallFile(zipFile, entry, entryPath);
+            extractSmallFile(zipFile, entry, entryPath, bufferSize);
         }
     }
 
-    private void extractLargeFile(ZipFile zipFile, ZipEntry entry, Path targetPath) throws IOException {
+    /**
+     * Ruta de una entrada dentro de {@code targetDir}. Los nombres vienen del ZIP descargado:
+     * se rechazan los que salen del destino ({@code ../}, rutas absolutas).
+     */
+    static Path resolveEntry(Path targetDir, String name) throws IOException {
+        Path root = targetDir.toAbsolutePath().normalize();
+        Path entryPath = root.resolve(name).normalize();
+        if (!entryPath.startsWith(root)) {
+            throw new IOException("Entrada con ruta fuera del destino, se omite: " + name);
+        }
+        return entryPath;
+    }
+
+    private static void extractLargeFile(ZipFile zipFile, ZipEntry entry, Path targetPath) throws IOException {
         try (InputStream inputStream = zipFile.getInputStream(entry);
              ReadableByteChannel inputChannel = Channels.newChannel(inputStream);
              FileChannel outputChannel = FileChannel.open(targetPath,
@@ -245,12 +994,12 @@ public final class BundleInstaller {
         }
     }
 
-    private void extractSmallFile(ZipFile zipFile, ZipEntry entry, Path targetPath) throws IOException {
+    private static void extractSmallFile(ZipFile zipFile, ZipEntry entry, Path targetPath, int bufferSize) throws IOException {
         try (InputStream inputStream = zipFile.getInputStream(entry);
              OutputStream outputStream = Files.newOutputStream(targetPath,
                      StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
 
-            byte[] buffer = new byte[UNZIP_BUFFER_SIZE];
+            byte[] buffer = new byte[bufferSize];
             int bytesRead;
             while ((bytesRead = inputStream.read(buffer)) != -1) {
                 outputStream.write(buffer, 0, bytesRead);
@@ -258,21 +1007,22 @@ public final class BundleInstaller {
         }
     }
 
+    /**
+     * Las carpetas se apartan a la papelera al instante y se borran mientras sigue la instalación.
+     */
     private void deleteDirectoriesOptimized(Path installDir) {
-        List<String> directoriesToDelete = List.of(
-                "mods", "config", ".fabric", "cache", ".cache"
-        );
-
-        for (String directory : directoriesToDelete) {
+        // Restos de una instalación que se cortó antes de terminar de borrar
+        Trash.sweep(installDir);
+        for (String directory : WIPED_DIRECTORIES) {
             try {
-                deleteDirectoryRecursive(installDir.resolve(directory));
+                Trash.discard(installDir, installDir.resolve(directory));
             } catch (IOException e) {
                 System.err.println("Error eliminando directorio " + directory + ": " + e.getMessage());
             }
         }
     }
 
-    private void deleteDirectoryRecursive(Path directory) throws IOException {
+    static void deleteDirectoryRecursive(Path directory) throws IOException {
         if (!Files.exists(directory) || !Files.isDirectory(directory)) {
             return;
         }
@@ -303,5 +1053,8 @@ public final class BundleInstaller {
             EXECUTOR.shutdownNow();
             Thread.currentThread().interrupt();
         }
+        if (!Trash.await(30, TimeUnit.SECONDS)) {
+            System.err.println("⚠ Quedan carpetas por borrar en la papelera; se terminarán en la próxima instalación");
+        }
     }
 }
\ No newline at end of file
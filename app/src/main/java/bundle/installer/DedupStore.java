@@ -0,0 +1,187 @@
+package bundle.installer;
+
+import bundle.download.DownloadCache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Almacén de archivos extraídos compartido entre directorios de juego. Cada archivo se guarda
+ * una sola vez en {@code objects/} con su SHA-256 como clave y se enlaza con un enlace duro en
+ * cada instancia. Así una instancia más no escribe los mods que ya tiene otra. Si el enlace no
+ * es posible (otro disco, FAT32) se copia; no se intenta un reflink porque Java no da forma de
+ * pedirlo, y como los .jar no se modifican el enlace duro no tiene inconveniente.
+ * <p>
+ * El tamaño y CRC-32 que declara el ZIP no bastan como clave: dos archivos distintos pueden
+ * coincidir. Solo sirven de pista en {@code index/}: si ya se guardó algo con ese tamaño y CRC,
+ * la entrada se descomprime sin escribirla para calcular su hash y, si el objeto existe, se enlaza.
+ * <p>
+ * Solo se usa para los .jar: los archivos que el juego modifica, como los de config, no se
+ * pueden compartir porque un cambio en una instancia aparecería en todas.
+ */
+final class DedupStore {
+
+    private final Path objectsDir;
+    private final Path indexDir;
+    private final Path tmpDir;
+
+    private final LongAdder reused = new LongAdder();
+    private final LongAdder stored = new LongAdder();
+    private final LongAdder copied = new LongAdder();
+
+    DedupStore(Path root) {
+        this.objectsDir = root.resolve("objects");
+        this.indexDir = root.resolve("index");
+        this.tmpDir = root.resolve("tmp");
+    }
+
+    static boolean accepts(ZipEntry entry) {
+        return entry.getSize() >= 0 && entry.getCrc() >= 0
+                && entry.getName().toLowerCase(Locale.ROOT).endsWith(".jar");
+    }
+
+    /**
+     * Coloca la entrada en {@code target}: la descomprime al almacén si aún no está y la enlaza.
+     */
+    void extract(ZipFile zipFile, ZipEntry entry, Path target, int bufferSize) throws IOException {
+        Path hint = indexDir.resolve(entry.getSize() + "-" + Long.toHexString(entry.getCrc()));
+        Path object = Files.exists(hint) ? objectsDir.resolve(hash(zipFile, entry, bufferSize)) : null;
+        if (object != null && Files.exists(object)) {
+            reused.increment();
+        } else {
+            object = store(zipFile, entry, hint, bufferSize);
+        }
+
+        Files.createDirectories(target.getParent());
+        Files.deleteIfExists(target);
+        try {
+            Files.createLink(target, object);
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(object, target, StandardCopyOption.REPLACE_EXISTING);
+            copied.increment();
+        }
+    }
+
+    // Solo lee: para saber si el contenido ya está guardado sin escribir nada
+    private static String hash(ZipFile zipFile, ZipEntry entry, int bufferSize) throws IOException {
+        MessageDigest digest = DownloadCache.newSha256();
+        try (InputStream in = new DigestInputStream(zipFile.getInputStream(entry), digest)) {
+            byte[] buffer = new byte[bufferSize];
+            while (in.read(buffer) != -1) {
+                // solo se consume el flujo para alimentar el digest
+            }
+        }
+        return DownloadCache.toHex(digest.digest());
+    }
+
+    // Se escribe aparte y se mueve al final: otro hilo u otra instancia pueden estar pidiendo el mismo objeto
+    private Path store(ZipFile zipFile, ZipEntry entry, Path hint, int bufferSize) throws IOException {
+        Files.createDirectories(objectsDir);
+        Files.createDirectories(indexDir);
+        Files.createDirectories(tmpDir);
+        Path tmp = Files.createTempFile(tmpDir, hint.getFileName().toString(), ".part");
+        try {
+            CRC32 crc = new CRC32();
+            MessageDigest digest = DownloadCache.newSha256();
+            try (InputStream in = new DigestInputStream(new CheckedInputStream(zipFile.getInputStream(entry), crc), digest);
+                 OutputStream out = Files.newOutputStream(tmp, StandardOpenOption.WRITE)) {
+                byte[] buffer = new byte[bufferSize];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            }
+            if (crc.getValue() != entry.getCrc()) {
+                throw new IOException("CRC distinto del declarado en el ZIP: " + entry.getName());
+            }
+            String sha256 = DownloadCache.toHex(digest.digest());
+            Path object = objectsDir.resolve(sha256);
+            // Un enlace nunca sustituye al destino (un renombrado sí, y dejaría a las instancias ya
+            // enlazadas con otra copia); sin enlaces, el move sin ATOMIC_MOVE también falla si existe
+            try {
+                try {
+                    Files.createLink(object, tmp);
+                } catch (UnsupportedOperationException e) {
+                    Files.move(tmp, object);
+                }
+                stored.increment();
+            } catch (FileAlreadyExistsException e) {
+                // Otro lo guardó antes con el mismo contenido
+                reused.increment();
+            }
+            // La pista solo dice que vale la pena calcular el hash; el objeto se busca siempre por su SHA-256
+            Path hintTmp = Files.createTempFile(tmpDir, hint.getFileName().toString(), ".idx");
+            Files.writeString(hintTmp, sha256);
+            Files.move(hintTmp, hint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return object;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Borra los objetos que ya no están enlazados en ninguna instancia. Necesita el número de
+     * enlaces del sistema de archivos; donde no se puede saber (Windows) no borra nada.
+     */
+    void prune() {
+        if (!Files.isDirectory(objectsDir)) {
+            return;
+        }
+        int removed = 0;
+        try (DirectoryStream<Path> objects = Files.newDirectoryStream(objectsDir)) {
+            for (Path object : objects) {
+                if ((Integer) Files.getAttribute(object, "unix:nlink") <= 1) {
+                    Files.delete(object);
+                    removed++;
+                }
+            }
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            return;
+        } catch (IOException e) {
+            System.err.println("⚠ No se pudo limpiar el almacén compartido: " + e.getMessage());
+        }
+        if (removed > 0) {
+            System.out.println("Almacén compartido: " + removed + " archivos sin usar eliminados");
+            pruneHints();
+        }
+    }
+
+    // Las pistas de objetos ya borrados solo harían calcular hashes de más
+    private void pruneHints() {
+        if (!Files.isDirectory(indexDir)) {
+            return;
+        }
+        try (DirectoryStream<Path> hints = Files.newDirectoryStream(indexDir)) {
+            for (Path hint : hints) {
+                if (!Files.exists(objectsDir.resolve(Files.readString(hint).trim()))) {
+                    Files.deleteIfExists(hint);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("⚠ No se pudo limpiar el índice del almacén compartido: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Resumen desde la última llamada, para el registro.
+     */
+    String drainStats() {
+        return "reutilizados " + reused.sumThenReset() + ", nuevos " + stored.sumThenReset()
+                + ", copiados sin enlace " + copied.sumThenReset();
+    }
+}
@@ -0,0 +1,21 @@
+package bundle.installer;
+
+import java.nio.file.Path;
+
+/**
+ * Un modpack a instalar en un directorio de juego, para las instalaciones por lotes.
+ */
+public final class InstallJob {
+    public final String pack;
+    public final Path gameDir;
+
+    public InstallJob(String pack, Path gameDir) {
+        this.pack = pack;
+        this.gameDir = gameDir;
+    }
+
+    @Override
+    public String toString() {
+        return pack + " -> " + gameDir;
+    }
+}
@@ -0,0 +1,129 @@
+package bundle.installer;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Registro de los archivos que dejó la última instalación en un directorio de juego,
+ * con el tamaño y CRC-32 que declaraba el ZIP y la fecha de modificación al escribirlos.
+ * Permite saltarse los archivos que no cambiaron en la siguiente instalación.
+ */
+final class InstallManifest {
+
+    static final String FILE_NAME = ".mateof24-manifest.json";
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    String pack;
+    Map<String, FileRecord> files = new TreeMap<>();
+
+    static final class FileRecord {
+        long size;
+        long crc;
+        long modified;
+        // Solo en archivos descargados sueltos con hash declarado; en los extraídos de un ZIP manda el CRC
+        String sha256;
+
+        FileRecord(long size, long crc, long modified) {
+            this.size = size;
+            this.crc = crc;
+            this.modified = modified;
+        }
+    }
+
+    static InstallManifest load(Path gameDir) {
+        Path file = gameDir.resolve(FILE_NAME);
+        if (!Files.exists(file)) {
+            return new InstallManifest();
+        }
+
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            InstallManifest manifest = GSON.fromJson(reader, InstallManifest.class);
+            return manifest != null ? manifest : new InstallManifest();
+        } catch (IOException | JsonParseException e) {
+            System.err.println("⚠ Manifiesto de instalación ilegible, se reinstalará todo: " + e.getMessage());
+            return new InstallManifest();
+        }
+    }
+
+    void save(Path gameDir) throws IOException {
+        Path file = gameDir.resolve(FILE_NAME);
+        Path tmp = file.resolveSibling(FILE_NAME + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            GSON.toJson(this, writer);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Un archivo se da por bueno si el ZIP declara el mismo tamaño y CRC que la última vez
+     * y en disco sigue intacto (mismo tamaño y misma fecha de modificación).
+     */
+    boolean isUnchanged(String path, long size, long crc, Path onDisk) {
+        FileRecord record = files.get(path);
+        if (record == null || record.size != size || record.crc != crc || size < 0 || crc < 0) {
+            return false;
+        }
+        return isIntact(record, onDisk);
+    }
+
+    /**
+     * Para archivos sueltos: la configuración declara el mismo SHA-256 que la última vez
+     * y el archivo en disco sigue intacto. Sin hash declarado no se puede saber y se descarga.
+     */
+    boolean isUnchangedFile(String path, String sha256, Path onDisk) {
+        FileRecord record = files.get(path);
+        if (record == null || sha256 == null || !sha256.equals(record.sha256)) {
+            return false;
+        }
+        return isIntact(record, onDisk);
+    }
+
+    /**
+     * El archivo en disco sigue como se registró (mismo tamaño y misma fecha de modificación).
+     */
+    static boolean isIntact(FileRecord record, Path onDisk) {
+        try {
+            return Files.size(onDisk) == record.size
+                    && Files.getLastModifiedTime(onDisk).toMillis() == record.modified;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    synchronized void recordFile(String path, String sha256, Path onDisk) throws IOException {
+        FileRecord record = new FileRecord(Files.size(onDisk), -1, Files.getLastModifiedTime(onDisk).toMillis());
+        record.sha256 = sha256;
+        files.put(path, record);
+    }
+
+    // Sincronizados porque los hilos de extracción registran en paralelo
+    synchronized void record(String path, long size, long crc, Path onDisk) throws IOException {
+        files.put(path, new FileRecord(size, crc, Files.getLastModifiedTime(onDisk).toMillis()));
+    }
+
+    synchronized void keep(String path, InstallManifest previous) {
+        files.put(path, previous.files.get(path));
+    }
+
+    synchronized boolean contains(String path) {
+        return files.containsKey(path);
+    }
+
+    /**
+     * Ruta relativa con separadores '/', igual que los nombres de entrada del ZIP.
+     */
+    static String key(Path gameDir, Path file) {
+        return gameDir.relativize(file).toString().replace('\\', '/');
+    }
+}
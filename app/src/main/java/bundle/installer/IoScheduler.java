@@ -0,0 +1,43 @@
+package bundle.installer;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Cuántos hilos escriben en disco a la vez durante la extracción. Con el límite por debajo
+ * de los hilos de extracción el resto espera turno antes de cada archivo, y el disco queda
+ * libre para el juego o una grabación. Se puede cambiar mientras se instala; 0 no limita.
+ */
+final class IoScheduler {
+
+    private int limit;
+    private int writing;
+
+    synchronized int limit() {
+        return limit;
+    }
+
+    synchronized void setLimit(int limit) {
+        this.limit = Math.max(0, limit);
+        notifyAll();
+    }
+
+    /**
+     * Espera turno para escribir un archivo; hay que llamar a {@link #release()} al terminar.
+     */
+    synchronized void acquire() throws InterruptedIOException {
+        while (limit > 0 && writing >= limit) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Extracción interrumpida");
+            }
+        }
+        writing++;
+    }
+
+    synchronized void release() {
+        writing--;
+        notifyAll();
+    }
+}
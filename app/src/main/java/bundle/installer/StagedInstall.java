@@ -0,0 +1,284 @@
+package bundle.installer;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Instalación por etapas. La versión nueva se monta en {@code .mateof24-staging} dentro del
+ * directorio de juego: lo que no cambió se enlaza desde la instalación actual y lo nuevo se extrae
+ * allí. Solo si todo salió bien se cambia por la actual con renombrados en el mismo disco; lo que
+ * se sustituye queda en {@code .mateof24-rollback} para poder volver atrás. Si algo falla antes
+ * del cambio, la instalación en uso no se ha tocado.
+ * <p>
+ * Lo que no cambió comparte el archivo con la copia de respaldo, así que esta solo ocupa lo que
+ * se sustituye. Si el juego edita después uno de esos archivos, volver atrás conserva la edición:
+ * era el mismo contenido en las dos versiones.
+ * <p>
+ * Las descargas van a {@code .mateof24-downloads}, fuera de la etapa: al descartarla los parciales
+ * siguen ahí y la siguiente ejecución los reanuda.
+ */
+final class StagedInstall {
+
+    static final String STAGING_DIR = ".mateof24-staging";
+    static final String ROLLBACK_DIR = ".mateof24-rollback";
+    static final String DOWNLOADS_DIR = ".mateof24-downloads";
+
+    private final Path gameDir;
+    private final Path staging;
+    private final List<String> managedDirectories;
+
+    private StagedInstall(Path gameDir, List<String> managedDirectories) {
+        this.gameDir = gameDir;
+        this.staging = gameDir.resolve(STAGING_DIR);
+        this.managedDirectories = managedDirectories;
+    }
+
+    /**
+     * Crea el directorio de etapa con los archivos de la instalación anterior que siguen intactos,
+     * para que la extracción los reconozca como sin cambios. {@code managedDirectories} son las
+     * carpetas que se sustituyen enteras (lo que tengan fuera del modpack se va a la copia de respaldo).
+     */
+    static StagedInstall prepare(Path gameDir, InstallManifest previous, List<String> managedDirectories)
+            throws IOException {
+        StagedInstall install = new StagedInstall(gameDir, managedDirectories);
+        // Restos de una instalación por etapas que no llegó a terminar
+        Trash.discard(gameDir, install.staging);
+        Files.createDirectories(install.staging);
+
+        int linked = 0;
+        int copied = 0;
+        for (Map.Entry<String, InstallManifest.FileRecord> file : previous.files.entrySet()) {
+            Path live = gameDir.resolve(file.getKey());
+            if (!InstallManifest.isIntact(file.getValue(), live)) {
+                continue;
+            }
+            Path staged = install.staging.resolve(file.getKey());
+            Files.createDirectories(staged.getParent());
+            if (link(live, staged)) {
+                linked++;
+            } else {
+                Files.copy(live, staged, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+                copied++;
+            }
+        }
+        System.out.println("Etapa preparada: " + linked + " enlazados, " + copied + " copiados");
+        return install;
+    }
+
+    Path dir() {
+        return staging;
+    }
+
+    /**
+     * Directorio de descargas de {@code gameDir}. De otra ejecución solo se conservan los parciales:
+     * lo que terminó de descargarse y no llegó a instalarse pudo ser de otra versión del modpack.
+     */
+    static Path downloadsDir(Path gameDir) throws IOException {
+        Path downloads = Files.createDirectories(gameDir.resolve(DOWNLOADS_DIR));
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(downloads)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.startsWith("dl-") && name.contains(".part")) {
+                    continue;
+                }
+                if (Files.isDirectory(file)) {
+                    BundleInstaller.deleteDirectoryRecursive(file);
+                } else {
+                    Files.delete(file);
+                }
+            }
+        }
+        return downloads;
+    }
+
+    /**
+     * Comprueba la etapa contra el manifiesto nuevo y la cambia por la instalación actual.
+     * Si un renombrado o el guardado del manifiesto fallan se deshacen los renombrados y la
+     * instalación queda como estaba.
+     */
+    void commit(InstallManifest previous, InstallManifest current) throws IOException {
+        // Lo que se trajo de la instalación anterior y el modpack ya no incluye
+        for (String path : previous.files.keySet()) {
+            if (!current.contains(path)) {
+                Files.deleteIfExists(staging.resolve(path));
+            }
+        }
+        verify(current);
+
+        Path rollback = gameDir.resolve(ROLLBACK_DIR);
+        Trash.discard(gameDir, rollback);
+        Files.createDirectories(rollback);
+        Path manifest = gameDir.resolve(InstallManifest.FILE_NAME);
+        if (Files.exists(manifest)) {
+            Files.copy(manifest, rollback.resolve(InstallManifest.FILE_NAME));
+        }
+
+        List<Path[]> moves = new ArrayList<>();
+        try {
+            // mods y config enteras: un renombrado por carpeta
+            for (String directory : managedDirectories) {
+                Path live = gameDir.resolve(directory);
+                Path next = Files.createDirectories(staging.resolve(directory));
+                if (Files.exists(live)) {
+                    move(live, rollback.resolve(directory), moves);
+                }
+                move(next, live, moves);
+            }
+
+            // Lo demás archivo por archivo: esas carpetas pueden tener cosas del usuario
+            List<Path> loose = new ArrayList<>();
+            Files.walkFileTree(staging, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    loose.add(file);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            for (Path file : loose) {
+                String path = InstallManifest.key(staging, file);
+                Path live = gameDir.resolve(path);
+                if (Files.exists(live)) {
+                    move(live, rollback.resolve(path), moves);
+                }
+                move(file, live, moves);
+            }
+
+            // Lo que ya no está en el modpack también pasa a la copia de respaldo
+            for (String path : previous.files.keySet()) {
+                Path live = gameDir.resolve(path);
+                if (!current.contains(path) && !isManaged(path) && Files.exists(live)) {
+                    move(live, rollback.resolve(path), moves);
+                }
+            }
+
+            // Sin el manifiesto nuevo la siguiente ejecución compararía contra la versión anterior
+            current.save(gameDir);
+        } catch (IOException e) {
+            undo(moves);
+            throw new IOException("No se pudo aplicar la instalación, se deja la anterior: " + e.getMessage(), e);
+        }
+
+        Trash.discard(gameDir, staging);
+        System.out.println("✓ Instalación aplicada; la anterior queda en " + ROLLBACK_DIR);
+    }
+
+    /**
+     * Descarta la etapa. La instalación en uso no cambia.
+     */
+    void abort() {
+        try {
+            Trash.discard(gameDir, staging);
+        } catch (IOException e) {
+            System.err.println("⚠ No se pudo descartar la etapa: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Vuelve a la instalación guardada en {@code .mateof24-rollback}. Devuelve false si no hay ninguna.
+     */
+    static boolean rollback(Path gameDir, List<String> managedDirectories) throws IOException {
+        StagedInstall install = new StagedInstall(gameDir, managedDirectories);
+        Path rollback = gameDir.resolve(ROLLBACK_DIR);
+        if (!Files.isDirectory(rollback)) {
+            return false;
+        }
+        InstallManifest installed = InstallManifest.load(gameDir);
+
+        for (String directory : managedDirectories) {
+            Path saved = rollback.resolve(directory);
+            if (Files.exists(saved)) {
+                Trash.discard(gameDir, gameDir.resolve(directory));
+                Files.move(saved, gameDir.resolve(directory), StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+
+        Path savedManifest = rollback.resolve(InstallManifest.FILE_NAME);
+        List<Path> loose = new ArrayList<>();
+        Files.walkFileTree(rollback, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (!file.equals(savedManifest)) {
+                    loose.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        for (Path file : loose) {
+            Path live = gameDir.resolve(InstallManifest.key(rollback, file));
+            Files.createDirectories(live.getParent());
+            Files.move(file, live, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        // Lo que trajo la instalación deshecha y antes no existía
+        InstallManifest restored = Files.exists(savedManifest)
+                ? InstallManifest.load(rollback) : new InstallManifest();
+        for (String path : installed.files.keySet()) {
+            if (!restored.contains(path) && !install.isManaged(path)) {
+                Files.deleteIfExists(gameDir.resolve(path));
+            }
+        }
+        if (Files.exists(savedManifest)) {
+            Files.move(savedManifest, gameDir.resolve(InstallManifest.FILE_NAME),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } else {
+            Files.deleteIfExists(gameDir.resolve(InstallManifest.FILE_NAME));
+        }
+
+        Trash.discard(gameDir, rollback);
+        System.out.println("✓ Restaurada la instalación anterior en " + gameDir);
+        return true;
+    }
+
+    private void verify(InstallManifest current) throws IOException {
+        for (Map.Entry<String, InstallManifest.FileRecord> file : current.files.entrySet()) {
+            Path staged = staging.resolve(file.getKey());
+            if (!Files.isRegularFile(staged) || Files.size(staged) != file.getValue().size) {
+                throw new IOException("Verificación fallida, falta o está incompleto: " + file.getKey());
+            }
+        }
+    }
+
+    private boolean isManaged(String path) {
+        for (String directory : managedDirectories) {
+            if (path.startsWith(directory + "/")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void move(Path from, Path to, List<Path[]> moves) throws IOException {
+        Files.createDirectories(to.getParent());
+        Files.move(from, to, StandardCopyOption.ATOMIC_MOVE);
+        moves.add(new Path[]{from, to});
+    }
+
+    private static void undo(List<Path[]> moves) {
+        for (int i = moves.size() - 1; i >= 0; i--) {
+            Path[] move = moves.get(i);
+            try {
+                Files.move(move[1], move[0], StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                System.err.println("✗ No se pudo deshacer " + move[1] + " -> " + move[0] + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static boolean link(Path existing, Path link) {
+        try {
+            Files.createLink(link, existing);
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            return false;
+        }
+    }
+}
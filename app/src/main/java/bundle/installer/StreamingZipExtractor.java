@@ -0,0 +1,143 @@
+package bundle.installer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Extrae un ZIP leyendo sus cabeceras locales según llegan por la red, de modo que la
+ * descompresión avanza a la vez que la descarga. Una entrada STORED con descriptor de datos
+ * no se puede delimitar sin el directorio central: en ese caso se lanza
+ * {@link CentralDirectoryRequiredException} y el instalador vuelve a la extracción normal.
+ * Un fallo al leer de la red no es un error de la entrada: se lanza {@link BodyReadException}
+ * y el instalador pasa a la descarga reanudable. Solo los fallos al escribir en disco y las
+ * entradas con rutas fuera del destino quedan como errores por entrada.
+ */
+final class StreamingZipExtractor {
+
+    private final Path targetDir;
+    private final InstallManifest previous;
+    private final InstallManifest current;
+    private final int bufferSize;
+    private final IoScheduler diskWriters;
+    private final List<IOException> errors = new ArrayList<>();
+    private int unchanged;
+    private int extracted;
+
+    StreamingZipExtractor(Path targetDir, InstallManifest previous, InstallManifest current, int bufferSize,
+                          IoScheduler diskWriters) {
+        this.targetDir = targetDir;
+        this.previous = previous;
+        this.current = current;
+        this.bufferSize = bufferSize;
+        this.diskWriters = diskWriters;
+    }
+
+    static final class CentralDirectoryRequiredException extends IOException {
+        CentralDirectoryRequiredException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    /**
+     * La respuesta se cortó o se atascó a mitad del cuerpo; lo extraído hasta ahí no vale.
+     */
+    static final class BodyReadException extends IOException {
+        BodyReadException(IOException cause) {
+            super("Descarga interrumpida durante la extracción: " + cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * No cierra {@code body}: lo que quede tras la última entrada pertenece a quien lo abrió.
+     */
+    void extract(InputStream body) throws IOException {
+        // Sin try-with-resources: cerrar el ZipInputStream cerraría también la respuesta HTTP
+        ZipInputStream zip = new ZipInputStream(body, StandardCharsets.UTF_8);
+        byte[] buffer = new byte[bufferSize];
+
+        ZipEntry entry;
+        while ((entry = nextEntry(zip)) != null) {
+            String name = entry.getName();
+            Path entryPath;
+            try {
+                entryPath = BundleInstaller.resolveEntry(targetDir, name);
+            } catch (IOException e) {
+                // getNextEntry salta los datos de la entrada rechazada
+                errors.add(e);
+                continue;
+            }
+
+            if (entry.isDirectory()) {
+                Files.createDirectories(entryPath);
+                continue;
+            }
+
+            // Con descriptor de datos la cabecera local no trae tamaño ni CRC: no se puede saltar
+            if (previous.isUnchanged(name, entry.getSize(), entry.getCrc(), entryPath)) {
+                current.keep(name, previous);
+                unchanged++;
+                continue;
+            }
+
+            diskWriters.acquire();
+            try {
+                Files.createDirectories(entryPath.getParent());
+                // Puede ser un enlace al almacén compartido de una instalación anterior
+                Files.deleteIfExists(entryPath);
+                try (OutputStream out = Files.newOutputStream(entryPath,
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    int bytesRead;
+                    while ((bytesRead = read(zip, buffer)) != -1) {
+                        out.write(buffer, 0, bytesRead);
+                    }
+                }
+                // Tras leer la entrada completa el ZipInputStream ya conoce su tamaño y CRC reales
+                current.record(name, entry.getSize(), entry.getCrc(), entryPath);
+                extracted++;
+            } catch (CentralDirectoryRequiredException | BodyReadException e) {
+                throw e;
+            } catch (IOException e) {
+                errors.add(new IOException("Error extrayendo: " + name + " -> " + e.getMessage(), e));
+            } finally {
+                diskWriters.release();
+            }
+        }
+
+        System.out.println("Extracción en streaming: sin cambios " + unchanged + ", extraídos "
+                + extracted + ", con error " + errors.size());
+    }
+
+    List<IOException> errors() {
+        return errors;
+    }
+
+    private static ZipEntry nextEntry(ZipInputStream zip) throws IOException {
+        try {
+            return zip.getNextEntry();
+        } catch (ZipException e) {
+            throw new CentralDirectoryRequiredException("El ZIP no se puede leer en streaming: " + e.getMessage(), e);
+        } catch (IOException e) {
+            throw new BodyReadException(e);
+        }
+    }
+
+    private static int read(ZipInputStream zip, byte[] buffer) throws IOException {
+        try {
+            return zip.read(buffer, 0, buffer.length);
+        } catch (ZipException e) {
+            throw new CentralDirectoryRequiredException("El ZIP no se puede leer en streaming: " + e.getMessage(), e);
+        } catch (IOException e) {
+            throw new BodyReadException(e);
+        }
+    }
+}
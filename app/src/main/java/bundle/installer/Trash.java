@@ -0,0 +1,133 @@
+package bundle.installer;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Borrado de carpetas grandes sin esperar. La carpeta se renombra a una papelera dentro del
+ * mismo directorio de juego (mismo disco, así que es instantáneo) y se borra en segundo plano,
+ * repartiendo las subcarpetas entre varios hilos, mientras sigue la instalación. Lo que quede de un cierre brusco se
+ * barre en la siguiente instalación sobre ese directorio.
+ */
+final class Trash {
+
+    static final String DIR_NAME = ".mateof24-trash";
+
+    // Borrar es sobre todo esperar al disco: más hilos que núcleos no estorban
+    private static final int DELETE_WORKERS = 4;
+    private static final AtomicInteger THREADS = new AtomicInteger();
+    private static final ExecutorService DELETER = Executors.newFixedThreadPool(DELETE_WORKERS, runnable -> {
+        Thread thread = new Thread(runnable, "trash-delete-" + THREADS.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Borrados en curso, para no repetirlos y para poder esperarlos al cerrar
+    private static final Map<Path, CompletableFuture<Void>> PENDING = new ConcurrentHashMap<>();
+
+    private Trash() { }
+
+    /**
+     * Saca {@code directory} de {@code root} al momento y lo borra en segundo plano. Si no se
+     * puede renombrar (archivos abiertos en Windows, por ejemplo) se borra aquí mismo.
+     */
+    static void discard(Path root, Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        Path trash = Files.createDirectories(root.resolve(DIR_NAME));
+        Path target = trash.resolve(directory.getFileName() + "-" + System.nanoTime());
+        try {
+            Files.move(directory, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("⚠ No se pudo mover a la papelera " + directory.getFileName() + ", se borra ahora: " + e.getMessage());
+            BundleInstaller.deleteDirectoryRecursive(directory);
+            return;
+        }
+        deleteLater(target);
+    }
+
+    /**
+     * Programa el borrado de lo que haya en la papelera de {@code root}.
+     */
+    static void sweep(Path root) {
+        Path trash = root.resolve(DIR_NAME);
+        if (!Files.isDirectory(trash)) {
+            return;
+        }
+        try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(trash)) {
+            for (Path leftover : leftovers) {
+                deleteLater(leftover);
+            }
+        } catch (IOException e) {
+            System.err.println("⚠ No se pudo leer la papelera: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Borra {@code directory} en segundo plano, con una tarea por cada elemento de primer nivel.
+     */
+    static void deleteLater(Path directory) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        if (PENDING.putIfAbsent(directory, done) != null) {
+            return;
+        }
+        List<CompletableFuture<Void>> parts = new ArrayList<>();
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(directory)) {
+            for (Path child : children) {
+                parts.add(CompletableFuture.runAsync(() -> deleteQuietly(child), DELETER));
+            }
+        } catch (IOException e) {
+            System.err.println("⚠ No se pudo leer " + directory + ": " + e.getMessage());
+        }
+        CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[0]))
+                .thenRunAsync(() -> deleteQuietly(directory), DELETER)
+                .whenComplete((ignored, error) -> {
+                    PENDING.remove(directory, done);
+                    done.complete(null);
+                });
+    }
+
+    /**
+     * Espera a que terminen los borrados en curso. Devuelve false si no terminaron a tiempo;
+     * lo que falte queda en la papelera para la próxima vez.
+     */
+    static boolean await(long timeout, TimeUnit unit) {
+        CompletableFuture<Void> all = CompletableFuture.allOf(PENDING.values().toArray(new CompletableFuture<?>[0]));
+        try {
+            all.get(timeout, unit);
+            return true;
+        } catch (TimeoutException | ExecutionException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            if (Files.isDirectory(path)) {
+                BundleInstaller.deleteDirectoryRecursive(path);
+            } else {
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException e) {
+            System.err.println("⚠ No se pudo borrar " + path + ": " + e.getMessage());
+        }
+    }
+}
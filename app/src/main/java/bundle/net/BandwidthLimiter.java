@@ -0,0 +1,86 @@
+package bundle.net;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Límite de ancho de banda compartido por todas las conexiones de un {@link HttpTransport}
+ * (cubeta de fichas). Cada lectura descuenta sus bytes y, si no quedan, el hilo que lee espera
+ * lo justo para volver al ritmo fijado; al dejar de leer, TCP frena al servidor. La reserva es
+ * pequeña a propósito: se busca un ritmo estable, no ráfagas. Se puede cambiar en cualquier
+ * momento; 0 quita el límite. Al cambiarlo se olvida la deuda del ritmo anterior y los hilos
+ * que esperan lo notan en la siguiente comprobación.
+ */
+public final class BandwidthLimiter {
+
+    // Reserva máxima: un cuarto de segundo al ritmo fijado, y al menos una lectura típica
+    private static final long MIN_BURST = 64 * 1024;
+    // Cada cuánto vuelve a mirar el ritmo un hilo que espera, para notar un cambio de límite
+    private static final long MAX_PARK_NANOS = 50_000_000L;
+
+    private volatile long bytesPerSecond;
+    private double tokens;
+    private long refilledAt = System.nanoTime();
+
+    public long limit() {
+        return bytesPerSecond;
+    }
+
+    public synchronized void setLimit(long bytesPerSecond) {
+        refill(System.nanoTime());
+        this.bytesPerSecond = Math.max(0, bytesPerSecond);
+        // La deuda se contrajo al ritmo anterior: pagarla al nuevo frenaría de más (o de menos)
+        tokens = Math.max(0, Math.min(tokens, burst()));
+    }
+
+    /**
+     * Descuenta {@code bytes} ya leídos y espera si se adelantaron al límite. Una lectura más
+     * grande que la reserva queda en deuda y la pagan las siguientes.
+     */
+    public void acquire(int bytes) {
+        if (bytesPerSecond <= 0) {
+            return;
+        }
+        synchronized (this) {
+            if (bytesPerSecond <= 0) {
+                return;
+            }
+            refill(System.nanoTime());
+            tokens -= bytes;
+        }
+        // Se espera fuera del cerrojo y a tramos cortos: el límite puede cambiar o quitarse mientras tanto
+        while (!Thread.currentThread().isInterrupted()) {
+            long waitNanos;
+            synchronized (this) {
+                long rate = bytesPerSecond;
+                if (rate <= 0) {
+                    return;
+                }
+                refill(System.nanoTime());
+                if (tokens >= 0) {
+                    return;
+                }
+                waitNanos = (long) (-tokens * 1e9 / rate);
+            }
+            LockSupport.parkNanos(this, Math.min(waitNanos, MAX_PARK_NANOS));
+        }
+    }
+
+    private void refill(long now) {
+        long rate = bytesPerSecond;
+        if (rate > 0) {
+            tokens = Math.min(burst(), tokens + (now - refilledAt) * rate / 1e9);
+        }
+        refilledAt = now;
+    }
+
+    private long burst() {
+        return Math.max(MIN_BURST, bytesPerSecond / 4);
+    }
+
+    @Override
+    public String toString() {
+        return bytesPerSecond > 0
+                ? "BandwidthLimiter{" + bytesPerSecond / 1024 + " KB/s}"
+                : "BandwidthLimiter{sin límite}";
+    }
+}
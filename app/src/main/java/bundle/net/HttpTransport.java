@@ -0,0 +1,298 @@
+package bundle.net;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transporte HTTP compartido por la carga de configuración y las descargas. Un único
+ * {@link HttpClient} reutiliza conexiones (y multiplexa con HTTP/2 cuando el servidor lo admite),
+ * así que cada petición nueva no paga otro handshake TLS.
+ */
+public final class HttpTransport {
+
+    public static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 ModpackInstaller/1.0";
+
+    private static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(30);
+    private static final Duration DEFAULT_READ_TIMEOUT = Duration.ofSeconds(60);
+
+    private static volatile HttpTransport shared;
+
+    private final HttpClient client;
+    private final Duration connectTimeout;
+    private final Duration readTimeout;
+    private final StallPolicy stallPolicy;
+    private final ScheduledExecutorService idleChecker;
+    // Transferencias en curso, para comparar cada una con la mediana de las demás
+    private final Set<IdleGuard> active = ConcurrentHashMap.newKeySet();
+    private final BandwidthLimiter limiter = new BandwidthLimiter();
+
+    public HttpTransport(Duration connectTimeout, Duration readTimeout) {
+        this(connectTimeout, readTimeout, StallPolicy.DEFAULT);
+    }
+
+    public HttpTransport(Duration connectTimeout, Duration readTimeout, StallPolicy stallPolicy) {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.stallPolicy = stallPolicy;
+
+        ExecutorService executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "http-transport");
+            t.setDaemon(true);
+            return t;
+        });
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(connectTimeout)
+                .executor(executor)
+                .build();
+
+        this.idleChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "http-idle-timeout");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Transporte por defecto. {@link #setShared(HttpTransport)} permite sustituirlo por uno
+     * con otros tiempos de espera antes de la primera petición.
+     */
+    public static HttpTransport shared() {
+        HttpTransport transport = shared;
+        if (transport == null) {
+            synchronized (HttpTransport.class) {
+                transport = shared;
+                if (transport == null) {
+                    transport = new HttpTransport(DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT);
+                    shared = transport;
+                }
+            }
+        }
+        return transport;
+    }
+
+    public static void setShared(HttpTransport transport) {
+        shared = transport;
+    }
+
+    /**
+     * Petición GET con las cabeceras comunes. El timeout cubre hasta recibir las cabeceras;
+     * para el cuerpo se usa {@link #guard(Closeable)}.
+     */
+    public HttpRequest.Builder get(URI uri) {
+        return HttpRequest.newBuilder(uri)
+                .GET()
+                .timeout(connectTimeout.plus(readTimeout))
+                .header("User-Agent", USER_AGENT)
+                .header("Accept", "*/*");
+    }
+
+    public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) throws IOException {
+        try {
+            return client.send(request, handler);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new java.io.InterruptedIOException("Petición interrumpida: " + request.uri());
+        }
+    }
+
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+        return client.sendAsync(request, handler);
+    }
+
+    public Duration readTimeout() {
+        return readTimeout;
+    }
+
+    /**
+     * Límite de ancho de banda de todas las transferencias vigiladas por {@link #guard(Closeable)}.
+     */
+    public BandwidthLimiter limiter() {
+        return limiter;
+    }
+
+    /**
+     * Cierra {@code body} si pasa más de {@link #readTimeout()} sin que nadie llame a
+     * {@link IdleGuard#touch(int)}. Sustituye al read timeout de HttpURLConnection, que
+     * HttpClient no tiene para el cuerpo de la respuesta. Además lo cierra si la transferencia
+     * sigue viva pero demasiado lenta, según {@link StallPolicy}.
+     */
+    public IdleGuard guard(Closeable body) {
+        return new IdleGuard(body);
+    }
+
+    /**
+     * Cuándo una transferencia que aún recibe datos se da por atascada: si en toda la ventana
+     * no llega a {@code minBytesPerSecond}, o si va por debajo de {@code stragglerRatio} veces la
+     * mediana de las demás transferencias en curso (hacen falta al menos tres para comparar).
+     * Un 0 desactiva cada criterio.
+     */
+    public static final class StallPolicy {
+        public static final StallPolicy DEFAULT = new StallPolicy(8 * 1024, Duration.ofSeconds(20), 0.1);
+        public static final StallPolicy NONE = new StallPolicy(0, Duration.ofSeconds(20), 0);
+
+        public final long minBytesPerSecond;
+        public final Duration window;
+        public final double stragglerRatio;
+
+        public StallPolicy(long minBytesPerSecond, Duration window, double stragglerRatio) {
+            this.minBytesPerSecond = minBytesPerSecond;
+            this.window = window;
+            this.stragglerRatio = stragglerRatio;
+        }
+    }
+
+    public final class IdleGuard implements AutoCloseable {
+        private static final int MIN_PEERS = 3;
+
+        private final Closeable body;
+        private final ScheduledFuture<?> check;
+        private volatile long lastActivity = System.nanoTime();
+        private volatile long received;
+        private volatile boolean expired;
+        // Tiempo esperando turno en el limitador: no cuenta como inactividad ni como lentitud
+        private volatile long throttledSince = -1;
+        private volatile long throttledNanos;
+        private volatile String reason;
+
+        // Muestras de la ventana; solo las toca el hilo del comprobador
+        private final long[] times;
+        private final long[] totals;
+        private final long[] waits;
+        private int head;
+        private int size;
+        // Ritmo en la ventana completa, o -1 mientras la transferencia sea más joven que la ventana
+        private volatile double rate = -1;
+
+        private IdleGuard(Closeable body) {
+            this.body = body;
+            long period = Math.max(100, Math.min(1000, Math.min(readTimeout.toMillis(), stallPolicy.window.toMillis()) / 4));
+            int samples = (int) Math.max(2, stallPolicy.window.toMillis() / period + 2);
+            this.times = new long[samples];
+            this.totals = new long[samples];
+            this.waits = new long[samples];
+            active.add(this);
+            this.check = idleChecker.scheduleAtFixedRate(this::check, period, period, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Llegaron {@code bytes} más. Lo llama solo el hilo que lee el cuerpo, que se queda
+         * esperando aquí si va por delante del {@link BandwidthLimiter}.
+         */
+        public void touch(int bytes) {
+            received += bytes;
+            long start = System.nanoTime();
+            throttledSince = start;
+            try {
+                limiter.acquire(bytes);
+            } finally {
+                long end = System.nanoTime();
+                throttledNanos += end - start;
+                throttledSince = -1;
+                lastActivity = end;
+            }
+        }
+
+        public boolean isExpired() {
+            return expired;
+        }
+
+        /**
+         * Por qué se cortó la transferencia, para el mensaje de error.
+         */
+        public String reason() {
+            return reason;
+        }
+
+        private void check() {
+            long now = System.nanoTime();
+            long since = throttledSince;
+            if (since < 0 && now - lastActivity > readTimeout.toNanos()) {
+                expire("Sin datos durante " + readTimeout.toSeconds() + "s");
+                return;
+            }
+
+            head = (head + 1) % times.length;
+            times[head] = now;
+            totals[head] = received;
+            waits[head] = throttledNanos + (since >= 0 ? now - since : 0);
+            size = Math.min(size + 1, times.length);
+            int oldest = Math.floorMod(head - size + 1, times.length);
+            long span = now - times[oldest];
+            if (span < stallPolicy.window.toNanos()) {
+                return;
+            }
+            // El ritmo del servidor se mide sin las esperas del limitador
+            long serving = span - (waits[head] - waits[oldest]);
+            if (serving < stallPolicy.window.toNanos() / 4) {
+                // Casi todo el tiempo lo frenó el límite: no hay nada que juzgar
+                rate = -1;
+                return;
+            }
+            double current = (totals[head] - totals[oldest]) / (serving / 1e9);
+            rate = current;
+
+            if (current < stallPolicy.minBytesPerSecond) {
+                expire(String.format("Transferencia atascada: %.1f KB/s durante %ds", current / 1024,
+                        stallPolicy.window.toSeconds()));
+                return;
+            }
+            if (stallPolicy.stragglerRatio > 0) {
+                double median = peerMedian();
+                if (median > 0 && current < median * stallPolicy.stragglerRatio) {
+                    expire(String.format("Transferencia rezagada: %.1f KB/s frente a una mediana de %.1f KB/s",
+                            current / 1024, median / 1024));
+                }
+            }
+        }
+
+        private double peerMedian() {
+            List<Double> rates = new ArrayList<>();
+            for (IdleGuard peer : active) {
+                if (peer != this && peer.rate >= 0) {
+                    rates.add(peer.rate);
+                }
+            }
+            if (rates.size() < MIN_PEERS - 1) {
+                return -1;
+            }
+            Collections.sort(rates);
+            int middle = rates.size() / 2;
+            return rates.size() % 2 == 1 ? rates.get(middle) : (rates.get(middle - 1) + rates.get(middle)) / 2;
+        }
+
+        private void expire(String why) {
+            reason = why;
+            expired = true;
+            close();
+            try {
+                body.close();
+            } catch (IOException e) {
+                // ya se está abortando la transferencia
+            }
+        }
+
+        @Override
+        public void close() {
+            check.cancel(false);
+            active.remove(this);
+        }
+    }
+}
@@ -7,17 +7,21 @@ import java.util.Set;
 import java.util.function.Supplier;
 
 public enum OperatingSystem {
-    WINDOWS(() -> home().resolve("AppData").resolve("Roaming").resolve(".minecraft"), Set.of("win")),
-    MAC(() -> home().resolve("Library").resolve("Application Support").resolve("minecraft"), Set.of("mac")),
-    LINUX(() -> home().resolve(".minecraft"), Set.of("linux", "unix", "nux", "nix")),
-    UNKNOWN(OperatingSystem::home, Set.of());
+    WINDOWS(() -> home().resolve("AppData").resolve("Roaming").resolve(".minecraft"),
+            () -> home().resolve("AppData").resolve("Roaming").resolve("MateoF24Installer"), Set.of("win")),
+    MAC(() -> home().resolve("Library").resolve("Application Support").resolve("minecraft"),
+            () -> home().resolve("Library").resolve("Application Support").resolve("MateoF24Installer"), Set.of("mac")),
+    LINUX(() -> home().resolve(".minecraft"), () -> home().resolve(".mateof24-installer"), Set.of("linux", "unix", "nux", "nix")),
+    UNKNOWN(OperatingSystem::home, () -> home().resolve(".mateof24-installer"), Set.of());
 
     private final Set<String> keywords;
     private final Supplier<Path> gameDirGetter;
+    private final Supplier<Path> installerDirGetter;
 
-    OperatingSystem(Supplier<Path> gameDirGetter, Set<String> keywords) {
+    OperatingSystem(Supplier<Path> gameDirGetter, Supplier<Path> installerDirGetter, Set<String> keywords) {
         this.keywords = keywords;
         this.gameDirGetter = gameDirGetter;
+        this.installerDirGetter = installerDirGetter;
     }
 
     public Path getMCDir() {
@@ -28,6 +32,13 @@ public enum OperatingSystem {
         return dir;
     }
 
+    /**
+     * Directorio propio del instalador (caché, estado), fuera de las instancias de Minecraft.
+     */
+    public Path getInstallerDir() {
+        return installerDirGetter.get();
+    }
+
     private static Path home() {
         return Paths.get(System.getProperty("user.home"));
     }
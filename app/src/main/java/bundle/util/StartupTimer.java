@@ -0,0 +1,74 @@
+package bundle.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mide las fases del arranque desde la entrada a {@code main} y registra el tiempo hasta que
+ * la ventana es interactiva en {@code startup.log}, una línea por arranque, para poder
+ * comparar entre versiones.
+ */
+public final class StartupTimer {
+
+    static final String LOG_FILE = "startup.log";
+
+    private final long start = System.nanoTime();
+    private final long jvmMillis;
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+
+    private StartupTimer() {
+        // Lo que tardó la JVM en llegar a main, si el sistema lo informa
+        this.jvmMillis = ProcessHandle.current().info().startInstant()
+                .map(launched -> Math.max(0, Duration.between(launched, Instant.now()).toMillis()))
+                .orElse(-1L);
+    }
+
+    public static StartupTimer start() {
+        return new StartupTimer();
+    }
+
+    /**
+     * Anota el fin de una fase; se puede llamar desde cualquier hilo.
+     */
+    public synchronized void mark(String phase) {
+        phases.put(phase, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * Imprime las fases y añade una línea al registro del directorio del instalador.
+     */
+    public synchronized void report(String version) {
+        long total = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        System.out.println("=== Tiempos de arranque ===");
+        if (jvmMillis >= 0) {
+            System.out.println("  JVM hasta main: " + jvmMillis + " ms");
+        }
+        phases.forEach((phase, millis) -> System.out.println("  " + phase + ": " + millis + " ms"));
+        System.out.println("✓ Interactivo a los " + total + " ms");
+
+        StringBuilder line = new StringBuilder()
+                .append(Instant.now()).append('\t')
+                .append(version).append('\t')
+                .append("jvm=").append(jvmMillis).append('\t');
+        phases.forEach((phase, millis) -> line.append(phase.replace(' ', '_')).append('=').append(millis).append('\t'));
+        line.append("interactive=").append(total).append(System.lineSeparator());
+
+        Path log = OperatingSystem.getCurrent().getInstallerDir().resolve(LOG_FILE);
+        try {
+            Files.createDirectories(log.getParent());
+            Files.writeString(log, line, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            System.err.println("⚠ No se pudo registrar el tiempo de arranque: " + e.getMessage());
+        }
+    }
+}
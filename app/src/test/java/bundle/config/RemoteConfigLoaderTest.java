@@ -0,0 +1,101 @@
+package bundle.config;
+
+import bundle.testing.FakeCdnServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Carga de la configuración contra un Gist falso: API de GitHub, URL raw de respaldo y revalidación con ETag.
+ */
+public class RemoteConfigLoaderTest {
+
+    private static final String FILE_NAME = "installer_config.json";
+    private static final String CONFIG = "{\"modpacks\":{\"survival\":{\"name\":\"Survival\"}}}";
+
+    private FakeCdnServer cdn;
+    private URI apiUrl;
+    private URI rawUrl;
+
+    @Before
+    public void setUp() throws IOException {
+        cdn = FakeCdnServer.start();
+        apiUrl = cdn.uri("/gists/fake");
+        rawUrl = cdn.uri("/raw/" + FILE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        cdn.close();
+    }
+
+    @Test
+    public void loadsConfigFromGistApi() {
+        cdn.publishGist("/gists/fake", FILE_NAME, CONFIG);
+        FakeCdnServer.Resource raw = publishRaw(CONFIG);
+
+        ConfigCache.Entry entry = RemoteConfigLoader.loadRemoteConfig(null, apiUrl, rawUrl);
+
+        assertEquals("GitHub API", entry.source);
+        assertTrue(entry.config.getAsJsonObject("modpacks").has("survival"));
+        // La API respondió antes del retardo: la URL raw no llegó a consultarse
+        assertEquals(0, raw.requests());
+    }
+
+    @Test
+    public void fallsBackToRawWhenApiFails() {
+        cdn.publishGist("/gists/fake", FILE_NAME, CONFIG).failNext(503, 1);
+        publishRaw(CONFIG);
+
+        ConfigCache.Entry entry = RemoteConfigLoader.loadRemoteConfig(null, apiUrl, rawUrl);
+
+        assertEquals("URL raw", entry.source);
+        assertTrue(entry.config.getAsJsonObject("modpacks").has("survival"));
+    }
+
+    @Test
+    public void fallsBackToRawWhenGistLacksConfigFile() {
+        cdn.publishGist("/gists/fake", "otro.json", CONFIG);
+        publishRaw(CONFIG);
+
+        ConfigCache.Entry entry = RemoteConfigLoader.loadRemoteConfig(null, apiUrl, rawUrl);
+
+        assertEquals("URL raw", entry.source);
+    }
+
+    @Test
+    public void rejectsConfigWithoutModpacks() {
+        cdn.publishGist("/gists/fake", FILE_NAME, "{\"modpacks\":{}}");
+        publishRaw("{\"version\":1}");
+
+        assertNull(RemoteConfigLoader.loadRemoteConfig(null, apiUrl, rawUrl));
+    }
+
+    @Test
+    public void keepsCachedEntryWhenNotModified() {
+        FakeCdnServer.Resource api = cdn.publishGist("/gists/fake", FILE_NAME, CONFIG).etag("\"gist-1\"");
+        publishRaw(CONFIG);
+
+        ConfigCache.Entry first = RemoteConfigLoader.loadRemoteConfig(null, apiUrl, rawUrl);
+        assertEquals("\"gist-1\"", first.etag);
+
+        ConfigCache.Entry second = RemoteConfigLoader.loadRemoteConfig(first, apiUrl, rawUrl);
+
+        // 304: la misma instancia, sin volver a parsear
+        assertSame(first, second);
+        assertEquals(2, api.requests());
+    }
+
+    private FakeCdnServer.Resource publishRaw(String content) {
+        return cdn.publish("/raw/" + FILE_NAME, content.getBytes(StandardCharsets.UTF_8)).contentType("text/plain");
+    }
+}
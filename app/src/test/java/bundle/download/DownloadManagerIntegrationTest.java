@@ -0,0 +1,234 @@
+package bundle.download;
+
+import bundle.config.Artifact;
+import bundle.net.HttpTransport;
+import bundle.testing.FakeCdnServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Descargas completas contra {@link FakeCdnServer}: cortes, reanudación, reintentos,
+ * atascos, rangos y nombres de archivo, sin salir de la máquina.
+ */
+public class DownloadManagerIntegrationTest {
+
+    private static final RetryPolicy FAST_RETRY = new RetryPolicy(3, Duration.ofMillis(50), Duration.ofSeconds(2));
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private FakeCdnServer cdn;
+    private Path dir;
+
+    @Before
+    public void setUp() throws IOException {
+        cdn = FakeCdnServer.start();
+        dir = temp.newFolder("game").toPath();
+    }
+
+    @After
+    public void tearDown() {
+        cdn.close();
+    }
+
+    @Test
+    public void resumesAfterMidStreamDrop() throws Exception {
+        byte[] body = FakeCdnServer.randomBytes(1_000_000, 1);
+        FakeCdnServer.Resource resource = cdn.publish("/drop.bin", body).dropAfter(300_000, 1);
+
+        List<DownloadException> errors = download(singleStream().retry(FAST_RETRY), artifact("/drop.bin", body));
+
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertArrayEquals(body, Files.readAllBytes(dir.resolve("drop.bin")));
+        assertEquals(2, resource.requests());
+        // El segundo intento pide solo lo que faltaba
+        assertEquals(1, resource.ranges().size());
+        assertResumedBefore(300_000, resource.ranges().get(0));
+        assertNoPartials();
+    }
+
+    @Test
+    public void restartsWhenValidatorChangesUnderIfRange() throws Exception {
+        byte[] before = FakeCdnServer.randomBytes(1_000_000, 2);
+        cdn.publish("/pack.bin", before).etag("\"v1\"").dropAfter(300_000, 1);
+
+        // Sin reintentos: el parcial queda en disco para la siguiente ejecución
+        List<DownloadException> first = download(singleStream().retry(new RetryPolicy(1, Duration.ZERO, Duration.ZERO)),
+                new Artifact(cdn.url("/pack.bin")));
+        assertEquals(1, first.size());
+
+        byte[] after = FakeCdnServer.randomBytes(1_000_000, 3);
+        FakeCdnServer.Resource updated = cdn.publish("/pack.bin", after).etag("\"v2\"");
+
+        List<DownloadException> second = download(singleStream().retry(FAST_RETRY), artifact("/pack.bin", after));
+
+        assertTrue(second.toString(), second.isEmpty());
+        // Se pidió el resto con If-Range, el servidor mandó el archivo nuevo entero y no se mezclaron
+        assertEquals(1, updated.ranges().size());
+        assertResumedBefore(300_000, updated.ranges().get(0));
+        assertArrayEquals(after, Files.readAllBytes(dir.resolve("pack.bin")));
+        assertNoPartials();
+    }
+
+    @Test
+    public void waitsRetryAfterOn429() throws Exception {
+        byte[] body = FakeCdnServer.randomBytes(200_000, 4);
+        FakeCdnServer.Resource resource = cdn.publish("/busy.bin", body).failNext(429, 1).retryAfter("1");
+
+        long start = System.nanoTime();
+        List<DownloadException> errors = download(singleStream().retry(FAST_RETRY), artifact("/busy.bin", body));
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertEquals(2, resource.requests());
+        // El retraso propio sería de 50 ms: manda el del servidor
+        assertTrue("esperó " + millis + " ms", millis >= 900);
+        assertArrayEquals(body, Files.readAllBytes(dir.resolve("busy.bin")));
+    }
+
+    @Test
+    public void retriesOn503UntilItSucceeds() throws Exception {
+        byte[] body = FakeCdnServer.randomBytes(200_000, 5);
+        FakeCdnServer.Resource resource = cdn.publish("/flaky.bin", body).failNext(503, 2).retryAfter("0");
+
+        List<DownloadException> errors = download(singleStream().retry(FAST_RETRY), artifact("/flaky.bin", body));
+
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertEquals(3, resource.requests());
+        assertArrayEquals(body, Files.readAllBytes(dir.resolve("flaky.bin")));
+    }
+
+    @Test
+    public void givesUpAfterLastAttempt() throws Exception {
+        cdn.publish("/down.bin", new byte[1000]).failNext(503, 10).retryAfter("0");
+
+        List<DownloadException> errors = download(singleStream().retry(FAST_RETRY), new Artifact(cdn.url("/down.bin")));
+
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0).getCause() instanceof HttpStatusException);
+        assertFalse(Files.exists(dir.resolve("down.bin")));
+    }
+
+    @Test
+    public void reissuesStalledConnection() throws Exception {
+        byte[] body = FakeCdnServer.randomBytes(2_000_000, 6);
+        // La primera respuesta casi no avanza; las siguientes van a ritmo normal
+        FakeCdnServer.Resource resource = cdn.publish("/slow.bin", body).throttleNext(2_000, 1);
+        HttpTransport transport = new HttpTransport(Duration.ofSeconds(5), Duration.ofSeconds(30),
+                new HttpTransport.StallPolicy(8 * 1024, Duration.ofSeconds(1), 0));
+
+        List<DownloadException> errors = download(singleStream().retry(FAST_RETRY).transport(transport),
+                artifact("/slow.bin", body));
+
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertEquals(2, resource.requests());
+        assertEquals(1, resource.ranges().size());
+        assertResumedBefore(body.length, resource.ranges().get(0));
+        assertArrayEquals(body, Files.readAllBytes(dir.resolve("slow.bin")));
+    }
+
+    @Test
+    public void downloadsInSegments() throws Exception {
+        byte[] body = FakeCdnServer.randomBytes(4_000_000, 7);
+        FakeCdnServer.Resource resource = cdn.publish("/big.bin", body);
+
+        List<DownloadException> errors = download(new DownloadOptions.Builder().cache(null).segments(4)
+                .minSegmentSize(1_000_000).retry(FAST_RETRY), artifact("/big.bin", body));
+
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertArrayEquals(body, Files.readAllBytes(dir.resolve("big.bin")));
+        // La primera petición sin rango descubre el tamaño; luego un rango por segmento
+        assertEquals(4, resource.ranges().size());
+        assertTrue(resource.ranges().contains("bytes=3000000-3999999"));
+        assertNoPartials();
+    }
+
+    @Test
+    public void fallsBackToSingleStreamWhenRangeIgnored() throws Exception {
+        byte[] body = FakeCdnServer.randomBytes(4_000_000, 10);
+        FakeCdnServer.Resource resource = cdn.publish("/proxy.bin", body).ignoreRange(true);
+
+        List<DownloadException> errors = download(new DownloadOptions.Builder().cache(null).segments(4)
+                .minSegmentSize(1_000_000).retry(FAST_RETRY), artifact("/proxy.bin", body));
+
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertArrayEquals(body, Files.readAllBytes(dir.resolve("proxy.bin")));
+        // Se intentó por segmentos, pero tras el 200 se repitió la descarga entera sin rango
+        assertFalse(resource.ranges().isEmpty());
+        assertEquals(resource.ranges().size() + 2, resource.requests());
+        assertNoPartials();
+    }
+
+    @Test
+    public void followsRedirects() throws Exception {
+        byte[] body = FakeCdnServer.randomBytes(100_000, 8);
+        FakeCdnServer.Resource resource = cdn.publish("/files/real.bin", body);
+        cdn.redirect("/latest.bin", "/files/real.bin");
+
+        Map<Artifact, Path> downloaded = new ConcurrentHashMap<>();
+        Artifact artifact = artifact("/latest.bin", body);
+        List<DownloadException> errors = DownloadManager.downloadArtifacts(List.of(artifact), a -> dir,
+                singleStream().retry(FAST_RETRY).build(), new DownloadProgress("test"), downloaded);
+
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertEquals(1, resource.requests());
+        assertArrayEquals(body, Files.readAllBytes(downloaded.get(artifact)));
+    }
+
+    @Test
+    public void namesFileFromContentDisposition() throws Exception {
+        byte[] body = FakeCdnServer.randomBytes(100_000, 9);
+        cdn.publish("/download", body).contentDisposition("modpack-1.2.zip");
+
+        List<DownloadException> errors = download(singleStream().retry(FAST_RETRY), artifact("/download", body));
+
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertArrayEquals(body, Files.readAllBytes(dir.resolve("modpack-1.2.zip")));
+        assertFalse(Files.exists(dir.resolve("download")));
+    }
+
+    private static DownloadOptions.Builder singleStream() {
+        return new DownloadOptions.Builder().cache(null).segments(1);
+    }
+
+    private List<DownloadException> download(DownloadOptions.Builder options, Artifact artifact) {
+        return DownloadManager.downloadArtifactsTo(dir, List.of(artifact), options.build(), new DownloadProgress("test"));
+    }
+
+    private Artifact artifact(String path, byte[] body) throws NoSuchAlgorithmException {
+        return new Artifact(cdn.url(path), DownloadCache.toHex(MessageDigest.getInstance("SHA-256").digest(body)),
+                body.length);
+    }
+
+    // Tras un corte se pierde lo que quedara en el búfer del socket: basta con que no empiece de cero
+    private static void assertResumedBefore(long cut, String range) {
+        assertTrue(range, range.startsWith("bytes=") && range.endsWith("-"));
+        long offset = Long.parseLong(range.substring("bytes=".length(), range.length() - 1));
+        assertTrue(range, offset > 0 && offset <= cut);
+    }
+
+    private void assertNoPartials() throws IOException {
+        try (var files = Files.list(dir)) {
+            assertTrue(files.noneMatch(file -> file.getFileName().toString().startsWith(ResumeState.PART_PREFIX)));
+        }
+    }
+}
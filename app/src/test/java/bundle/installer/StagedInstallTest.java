@@ -0,0 +1,148 @@
+package bundle.installer;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Cambio de la etapa por la instalación en uso, deshacer a mitad del cambio y vuelta atrás.
+ */
+public class StagedInstallTest {
+
+    private static final List<String> MANAGED = List.of("mods", "config");
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private Path gameDir;
+    private InstallManifest previous;
+
+    @Before
+    public void setUp() throws IOException {
+        gameDir = temp.newFolder("game").toPath();
+        previous = new InstallManifest();
+        install(previous, gameDir, "mods/old.jar", "old");
+        install(previous, gameDir, "config/shared.cfg", "shared");
+        install(previous, gameDir, "options.txt", "v1");
+        previous.save(gameDir);
+        // Del usuario: la carpeta gestionada se sustituye entera, lo suelto se respeta
+        write(gameDir.resolve("saves/world.dat"), "world");
+    }
+
+    @Test
+    public void commitSwapsStageAndKeepsPreviousForRollback() throws IOException {
+        StagedInstall staged = StagedInstall.prepare(gameDir, previous, MANAGED);
+        InstallManifest current = nextVersion(staged);
+
+        staged.commit(previous, current);
+
+        assertEquals("new", read(gameDir.resolve("mods/new.jar")));
+        assertFalse(Files.exists(gameDir.resolve("mods/old.jar")));
+        assertEquals("shared", read(gameDir.resolve("config/shared.cfg")));
+        assertEquals("v2", read(gameDir.resolve("options.txt")));
+        assertEquals("world", read(gameDir.resolve("saves/world.dat")));
+        assertEquals(current.files.keySet(), InstallManifest.load(gameDir).files.keySet());
+
+        Path rollback = gameDir.resolve(StagedInstall.ROLLBACK_DIR);
+        assertEquals("old", read(rollback.resolve("mods/old.jar")));
+        assertEquals("v1", read(rollback.resolve("options.txt")));
+        assertFalse(Files.exists(gameDir.resolve(StagedInstall.STAGING_DIR)));
+    }
+
+    @Test
+    public void failedMoveLeavesLiveInstallUntouched() throws IOException {
+        StagedInstall staged = StagedInstall.prepare(gameDir, previous, MANAGED);
+        InstallManifest current = nextVersion(staged);
+        // Un archivo suelto cuyo directorio en el juego es un archivo: su renombrado falla tras los de mods y config
+        install(current, staged.dir(), "resourcepacks/pack.zip", "pack");
+        write(gameDir.resolve("resourcepacks"), "no es un directorio");
+
+        try {
+            staged.commit(previous, current);
+            fail("Se esperaba que el cambio fallara");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("No se pudo aplicar la instalación"));
+        }
+
+        assertLiveIsPrevious();
+    }
+
+    @Test
+    public void manifestSaveFailureUndoesMoves() throws IOException {
+        StagedInstall staged = StagedInstall.prepare(gameDir, previous, MANAGED);
+        InstallManifest current = nextVersion(staged);
+        // El manifiesto se escribe en un temporal junto al definitivo: un directorio ahí impide guardarlo
+        Files.createDirectories(gameDir.resolve(InstallManifest.FILE_NAME + ".tmp"));
+
+        try {
+            staged.commit(previous, current);
+            fail("Se esperaba que el guardado del manifiesto fallara");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("No se pudo aplicar la instalación"));
+        }
+
+        assertLiveIsPrevious();
+    }
+
+    @Test
+    public void rollbackRestoresPreviousInstall() throws IOException {
+        StagedInstall staged = StagedInstall.prepare(gameDir, previous, MANAGED);
+        staged.commit(previous, nextVersion(staged));
+
+        assertTrue(StagedInstall.rollback(gameDir, MANAGED));
+
+        assertLiveIsPrevious();
+        assertFalse(Files.exists(gameDir.resolve(StagedInstall.ROLLBACK_DIR)));
+        // Solo hay una copia de respaldo
+        assertFalse(StagedInstall.rollback(gameDir, MANAGED));
+    }
+
+    // mods/old.jar sale, mods/new.jar entra, options.txt cambia y extra.txt es nuevo
+    private InstallManifest nextVersion(StagedInstall staged) throws IOException {
+        InstallManifest current = new InstallManifest();
+        current.keep("config/shared.cfg", previous);
+        install(current, staged.dir(), "mods/new.jar", "new");
+        install(current, staged.dir(), "options.txt", "v2");
+        install(current, staged.dir(), "extra.txt", "extra");
+        return current;
+    }
+
+    private void assertLiveIsPrevious() throws IOException {
+        assertEquals("old", read(gameDir.resolve("mods/old.jar")));
+        assertFalse(Files.exists(gameDir.resolve("mods/new.jar")));
+        assertEquals("shared", read(gameDir.resolve("config/shared.cfg")));
+        assertEquals("v1", read(gameDir.resolve("options.txt")));
+        assertFalse(Files.exists(gameDir.resolve("extra.txt")));
+        assertEquals("world", read(gameDir.resolve("saves/world.dat")));
+        assertEquals(previous.files.keySet(), InstallManifest.load(gameDir).files.keySet());
+    }
+
+    private static void install(InstallManifest manifest, Path root, String path, String content) throws IOException {
+        Path file = root.resolve(path);
+        write(file, content);
+        manifest.record(path, Files.size(file), 0, file);
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        // En la etapa puede ser un enlace al archivo en uso: como al extraer, se sustituye en vez de escribir encima
+        Files.deleteIfExists(file);
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+    }
+
+    private static String read(Path file) throws IOException {
+        return Files.readString(file, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,121 @@
+package bundle.installer;
+
+import bundle.testing.FakeCdnServer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Extracción en streaming de un modpack generado, sin red ni directorio central.
+ */
+public class StreamingZipExtractorTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void extractsModpackAndRecordsManifest() throws Exception {
+        byte[] zip = FakeCdnServer.modpackZip(20, 10_000, 1);
+        Path target = temp.newFolder("game").toPath();
+        InstallManifest current = new InstallManifest();
+
+        StreamingZipExtractor extractor = extractor(target, current);
+        extractor.extract(new ByteArrayInputStream(zip));
+
+        assertTrue(extractor.errors().toString(), extractor.errors().isEmpty());
+        assertEquals(20, current.files.size());
+        try (ZipInputStream entries = new ZipInputStream(new ByteArrayInputStream(zip))) {
+            ZipEntry entry;
+            while ((entry = entries.getNextEntry()) != null) {
+                assertArrayEquals(entry.getName(), entries.readAllBytes(),
+                        Files.readAllBytes(target.resolve(entry.getName())));
+            }
+        }
+    }
+
+    @Test
+    public void rejectsEntriesOutsideTarget() throws Exception {
+        Path root = temp.newFolder("root").toPath();
+        Path target = Files.createDirectory(root.resolve("game"));
+        byte[] zip = zip("../evil.txt", "mods/../../evil2.txt", "mods/ok.jar");
+        InstallManifest current = new InstallManifest();
+
+        StreamingZipExtractor extractor = extractor(target, current);
+        extractor.extract(new ByteArrayInputStream(zip));
+
+        assertEquals(2, extractor.errors().size());
+        assertTrue(Files.exists(target.resolve("mods/ok.jar")));
+        assertFalse(Files.exists(root.resolve("evil.txt")));
+        assertFalse(Files.exists(root.resolve("evil2.txt")));
+        assertEquals(1, current.files.size());
+    }
+
+    @Test
+    public void reportsTruncatedBodyAsReadFailure() throws Exception {
+        byte[] zip = FakeCdnServer.modpackZip(20, 10_000, 2);
+        Path target = temp.newFolder("game").toPath();
+        // Como una conexión que se corta a mitad del cuerpo
+        InputStream dropped = new InputStream() {
+            private final InputStream in = new ByteArrayInputStream(zip, 0, zip.length / 2);
+
+            @Override
+            public int read() throws IOException {
+                int b = in.read();
+                if (b < 0) {
+                    throw new IOException("Connection reset");
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int off, int len) throws IOException {
+                int n = in.read(buffer, off, len);
+                if (n < 0) {
+                    throw new IOException("Connection reset");
+                }
+                return n;
+            }
+        };
+
+        StreamingZipExtractor extractor = extractor(target, new InstallManifest());
+        try {
+            extractor.extract(dropped);
+            fail("Se esperaba BodyReadException");
+        } catch (StreamingZipExtractor.BodyReadException e) {
+            // La entrada a medias no cuenta como error propio: el instalador repite la descarga
+            assertTrue(extractor.errors().isEmpty());
+        }
+    }
+
+    private static StreamingZipExtractor extractor(Path target, InstallManifest current) {
+        return new StreamingZipExtractor(target, new InstallManifest(), current, 8192, new IoScheduler());
+    }
+
+    private static byte[] zip(String... names) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            for (String name : names) {
+                zip.putNextEntry(new ZipEntry(name));
+                zip.write(name.getBytes());
+                zip.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+}
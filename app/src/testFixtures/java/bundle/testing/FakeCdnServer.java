@@ -0,0 +1,394 @@
+package bundle.testing;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Servidor HTTP local que hace de CDN y de gist para probar descargas sin red. Cada recurso
+ * publicado se puede limitar en ancho de banda (también solo unas respuestas, para simular
+ * una conexión rezagada), retrasar, cortar a mitad del cuerpo, hacer que falle unas cuantas veces, que ignore {@code Range} o que responda con otro
+ * {@code Content-Disposition}; también se pueden declarar redirecciones. Pensado para tests de integración y para los benchmarks.
+ */
+public final class FakeCdnServer implements AutoCloseable {
+
+    private static final int CHUNK = 16 * 1024;
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "fake-cdn");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<String, Resource> resources = new ConcurrentHashMap<>();
+    private final Map<String, String> redirects = new ConcurrentHashMap<>();
+
+    private FakeCdnServer(HttpServer server) {
+        this.server = server;
+    }
+
+    /**
+     * Arranca en un puerto libre de la interfaz de loopback.
+     */
+    public static FakeCdnServer start() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        FakeCdnServer cdn = new FakeCdnServer(server);
+        server.createContext("/", cdn::handle);
+        server.setExecutor(cdn.executor);
+        server.start();
+        return cdn;
+    }
+
+    /**
+     * Publica {@code body} en {@code path}; el recurso devuelto permite configurar su comportamiento.
+     */
+    public Resource publish(String path, byte[] body) {
+        Resource resource = new Resource(normalize(path), body);
+        resources.put(resource.path, resource);
+        return resource;
+    }
+
+    /**
+     * Publica la respuesta de la API de gists con {@code content} como contenido de {@code fileName}.
+     */
+    public Resource publishGist(String path, String fileName, String content) {
+        String json = "{\"id\":\"fake\",\"files\":{" + quote(fileName) + ":{\"filename\":" + quote(fileName)
+                + ",\"content\":" + quote(content) + "}}}";
+        return publish(path, json.getBytes(StandardCharsets.UTF_8)).contentType("application/json");
+    }
+
+    /**
+     * {@code from} responde con 302 hacia {@code to} (ruta local o URL absoluta).
+     */
+    public void redirect(String from, String to) {
+        redirects.put(normalize(from), to.startsWith("http") ? to : uri(to).toString());
+    }
+
+    public URI uri(String path) {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + normalize(path));
+    }
+
+    public String url(String path) {
+        return uri(path).toString();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Un ZIP sintético de {@code entries} archivos de {@code entrySize} bytes, mitad aleatorios
+     * y mitad repetidos para que se compriman algo, como los de un modpack real.
+     */
+    public static byte[] modpackZip(int entries, int entrySize, long seed) {
+        Random random = new Random(seed);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            byte[] content = new byte[entrySize];
+            for (int i = 0; i < entries; i++) {
+                random.nextBytes(content);
+                for (int j = entrySize / 2; j < entrySize; j++) {
+                    content[j] = (byte) (j % 31);
+                }
+                zip.putNextEntry(new ZipEntry((i % 2 == 0 ? "mods/" : "config/") + "file" + i + ".dat"));
+                zip.write(content);
+                zip.closeEntry();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static byte[] randomBytes(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    /**
+     * Comportamiento de un recurso publicado. Todo se puede cambiar con el servidor en marcha.
+     */
+    public static final class Resource {
+        final String path;
+        final byte[] body;
+        private final AtomicInteger requests = new AtomicInteger();
+        private final List<String> ranges = new CopyOnWriteArrayList<>();
+        private final AtomicInteger drops = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private volatile int failureStatus;
+        private volatile String retryAfter;
+        private volatile long dropAfter = -1;
+        private volatile long bytesPerSecond = -1;
+        private final AtomicInteger throttles = new AtomicInteger();
+        private volatile long throttledBytesPerSecond;
+        private volatile Duration latency = Duration.ZERO;
+        private volatile boolean ignoreRange;
+        private volatile String etag;
+        private volatile String contentDisposition;
+        private volatile String contentType = "application/octet-stream";
+        private volatile int status = 200;
+
+        private Resource(String path, byte[] body) {
+            this.path = path;
+            this.body = body;
+            this.etag = "\"" + Integer.toHexString(java.util.Arrays.hashCode(body)) + "\"";
+        }
+
+        public Resource bytesPerSecond(long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+            return this;
+        }
+
+        /**
+         * Las próximas {@code times} respuestas van a {@code bytesPerSecond}, sin importar el límite general.
+         */
+        public Resource throttleNext(long bytesPerSecond, int times) {
+            this.throttledBytesPerSecond = bytesPerSecond;
+            this.throttles.set(times);
+            return this;
+        }
+
+        /**
+         * Retraso antes de enviar las cabeceras.
+         */
+        public Resource latency(Duration latency) {
+            this.latency = latency;
+            return this;
+        }
+
+        /**
+         * Las próximas {@code times} respuestas cortan la conexión tras {@code afterBytes} bytes de cuerpo.
+         */
+        public Resource dropAfter(long afterBytes, int times) {
+            this.dropAfter = afterBytes;
+            this.drops.set(times);
+            return this;
+        }
+
+        /**
+         * Las próximas {@code times} peticiones responden {@code status} sin cuerpo, como un CDN con hipo.
+         */
+        public Resource failNext(int status, int times) {
+            this.failureStatus = status;
+            this.failures.set(times);
+            return this;
+        }
+
+        /**
+         * Cabecera {@code Retry-After} de las respuestas de error, o null para no enviarla.
+         */
+        public Resource retryAfter(String retryAfter) {
+            this.retryAfter = retryAfter;
+            return this;
+        }
+
+        /**
+         * Sigue anunciando {@code Accept-Ranges: bytes} pero responde siempre 200 con el cuerpo entero,
+         * como algunos proxies.
+         */
+        public Resource ignoreRange(boolean ignoreRange) {
+            this.ignoreRange = ignoreRange;
+            return this;
+        }
+
+        /**
+         * ETag con comillas, o null para no enviar ninguno (y no admitir If-Range ni If-None-Match).
+         */
+        public Resource etag(String etag) {
+            this.etag = etag;
+            return this;
+        }
+
+        public Resource contentDisposition(String fileName) {
+            this.contentDisposition = fileName != null ? "attachment; filename=\"" + fileName + "\"" : null;
+            return this;
+        }
+
+        public Resource contentType(String contentType) {
+            this.contentType = contentType;
+            return this;
+        }
+
+        /**
+         * Responde siempre con este código y sin cuerpo (salvo 200).
+         */
+        public Resource status(int status) {
+            this.status = status;
+            return this;
+        }
+
+        public int requests() {
+            return requests.get();
+        }
+
+        /**
+         * Cabeceras {@code Range} recibidas, en orden de llegada.
+         */
+        public List<String> ranges() {
+            return List.copyOf(ranges);
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String target = redirects.get(path);
+        if (target != null) {
+            exchange.getResponseHeaders().add("Location", target);
+            exchange.sendResponseHeaders(302, -1);
+            exchange.close();
+            return;
+        }
+
+        Resource resource = resources.get(path);
+        if (resource == null) {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+        resource.requests.incrementAndGet();
+
+        sleep(resource.latency.toMillis());
+
+        Headers request = exchange.getRequestHeaders();
+        Headers response = exchange.getResponseHeaders();
+        int failure = resource.failures.getAndUpdate(n -> Math.max(0, n - 1)) > 0 ? resource.failureStatus : 200;
+        int status = failure != 200 ? failure : resource.status;
+        if (status != 200) {
+            if (resource.retryAfter != null) {
+                response.add("Retry-After", resource.retryAfter);
+            }
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+            return;
+        }
+
+        String etag = resource.etag;
+        if (etag != null) {
+            response.add("ETag", etag);
+            if (etag.equals(request.getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+        }
+        response.add("Content-Type", resource.contentType);
+        if (resource.contentDisposition != null) {
+            response.add("Content-Disposition", resource.contentDisposition);
+        }
+
+        long start = 0;
+        long end = resource.body.length - 1L;
+        int code = 200;
+        String range = request.getFirst("Range");
+        if (range != null) {
+            resource.ranges.add(range);
+        }
+        response.add("Accept-Ranges", "bytes");
+        if (!resource.ignoreRange) {
+            String ifRange = request.getFirst("If-Range");
+            boolean rangeValid = ifRange == null || ifRange.equals(etag);
+            if (range != null && range.startsWith("bytes=") && rangeValid) {
+                String[] bounds = range.substring("bytes=".length()).split("-", 2);
+                start = Long.parseLong(bounds[0]);
+                if (bounds.length > 1 && !bounds[1].isEmpty()) {
+                    end = Math.min(end, Long.parseLong(bounds[1]));
+                }
+                if (start > end) {
+                    response.add("Content-Range", "bytes */" + resource.body.length);
+                    exchange.sendResponseHeaders(416, -1);
+                    exchange.close();
+                    return;
+                }
+                response.add("Content-Range", "bytes " + start + "-" + end + "/" + resource.body.length);
+                code = 206;
+            }
+        }
+
+        long length = end - start + 1;
+        exchange.sendResponseHeaders(code, length);
+        long limit = resource.drops.getAndUpdate(n -> Math.max(0, n - 1)) > 0 ? resource.dropAfter : -1;
+        long bytesPerSecond = resource.throttles.getAndUpdate(n -> Math.max(0, n - 1)) > 0
+                ? resource.throttledBytesPerSecond : resource.bytesPerSecond;
+        try (OutputStream out = exchange.getResponseBody()) {
+            writeBody(out, resource, (int) start, length, limit, bytesPerSecond);
+        }
+    }
+
+    private static void writeBody(OutputStream out, Resource resource, int offset, long length, long dropAfter,
+                                  long bytesPerSecond) throws IOException {
+        long sent = 0;
+        long begin = System.nanoTime();
+        while (sent < length) {
+            int chunk = (int) Math.min(CHUNK, length - sent);
+            if (dropAfter >= 0 && sent + chunk > dropAfter) {
+                out.write(resource.body, (int) (offset + sent), (int) (dropAfter - sent));
+                out.flush();
+                // Una excepción en el handler hace que el servidor cierre la conexión sin terminar el cuerpo
+                throw new IOException("Conexión cortada a propósito tras " + dropAfter + " bytes");
+            }
+            out.write(resource.body, (int) (offset + sent), chunk);
+            sent += chunk;
+
+            if (bytesPerSecond > 0) {
+                long due = begin + sent * 1_000_000_000L / bytesPerSecond;
+                sleep((due - System.nanoTime()) / 1_000_000);
+            }
+        }
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String normalize(String path) {
+        return path.startsWith("/") ? path : "/" + path;
+    }
+
+    private static String quote(String text) {
+        StringBuilder out = new StringBuilder("\"");
+        for (char c : text.toCharArray()) {
+            switch (c) {
+                case '"': out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        return out.append('"').toString();
+    }
+}